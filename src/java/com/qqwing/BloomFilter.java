@@ -0,0 +1,95 @@
+// @formatter:off
+/*
+ * qqwing - Sudoku solver and generator
+ * Copyright (C) 2014 Stephen Ostermiller
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+// @formatter:on
+package com.qqwing;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of 64 bit hashes with a fixed number of bits, for
+ * suppressing duplicates in runs too long to remember every hash. Bits are
+ * set with compare and swap, and a hash that looks new is added under the
+ * lock for its stripe, so that two threads adding the same hash at once
+ * can't both see it as new. Hashes that have been seen are checked without
+ * a lock. Once the filter fills up, some new hashes will look like they have
+ * been seen before.
+ */
+final class BloomFilter implements HashFilter {
+
+	/**
+	 * The number of bits set for each hash.
+	 */
+	private static final int HASH_COUNT = 4;
+
+	private static final int STRIPE_BITS = 6;
+
+	private final Object[] stripes = new Object[1 << STRIPE_BITS];
+
+	private final AtomicLongArray words;
+
+	private final long bitCount;
+
+	/**
+	 * @param bits The size of the filter, rounded up to a multiple of 64
+	 */
+	BloomFilter(long bits) {
+		long wordCount = (bits + 63) / 64;
+		if (wordCount <= 0 || wordCount > Integer.MAX_VALUE) throw new IllegalArgumentException("Bad Bloom filter size: " + bits);
+		words = new AtomicLongArray((int) wordCount);
+		bitCount = wordCount * 64;
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Object();
+		}
+	}
+
+	@Override public boolean add(long hash) {
+		// Derive the bits from the two halves of the hash
+		long h1 = hash & 0xffffffffL;
+		long h2 = hash >>> 32;
+		if (contains(h1, h2)) return false;
+		synchronized (stripes[(int) (hash >>> (64 - STRIPE_BITS))]) {
+			boolean added = false;
+			for (int i = 0; i < HASH_COUNT; i++) {
+				long bit = (h1 + i * h2) % bitCount;
+				int word = (int) (bit >>> 6);
+				long mask = 1L << bit;
+				// Other hashes share the word, so set the bit with compare
+				// and swap even under the lock
+				long old = words.get(word);
+				while ((old & mask) == 0 && !words.compareAndSet(word, old, old | mask)) {
+					old = words.get(word);
+				}
+				if ((old & mask) == 0) added = true;
+			}
+			return added;
+		}
+	}
+
+	/**
+	 * Whether all the bits for the hash are set.
+	 */
+	private boolean contains(long h1, long h2) {
+		for (int i = 0; i < HASH_COUNT; i++) {
+			long bit = (h1 + i * h2) % bitCount;
+			if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+		}
+		return true;
+	}
+}
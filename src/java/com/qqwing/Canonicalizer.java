@@ -0,0 +1,296 @@
+// @formatter:off
+/*
+ * qqwing - Sudoku solver and generator
+ * Copyright (C) 2014 Stephen Ostermiller
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+// @formatter:on
+package com.qqwing;
+
+import static com.qqwing.QQWing.BOARD_SIZE;
+import static com.qqwing.QQWing.GRID_SIZE;
+import static com.qqwing.QQWing.ROW_COL_SEC_SIZE;
+
+import java.util.Arrays;
+
+/**
+ * Finds the minimal lexicographic form (minlex) of a puzzle: of all the
+ * puzzles that it can be turned into by relabeling digits, reordering bands
+ * and stacks, reordering rows within bands and columns within stacks, and
+ * transposing, the one whose 81 values (0 for unknown) come first in
+ * lexicographic order. Puzzles that are the same up to these changes have
+ * the same minimal form, so it can be used to tell them apart from puzzles
+ * that are really different.
+ *
+ * For each transposition and each of the 1296 column orders, the rows are
+ * picked one at a time, keeping only those that tie for the smallest next
+ * row, and giving up as soon as the rows so far are larger than the best
+ * found already. The digits are labeled 1 through 9 in the order they first
+ * appear, which is always the smallest labeling for a given arrangement.
+ *
+ * Not safe for use from more than one thread at a time.
+ */
+final class Canonicalizer {
+
+	/**
+	 * The six orders of three things.
+	 */
+	private static final int[][] ORDERS_OF_THREE = {
+		{0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}
+	};
+
+	/**
+	 * Every order of columns that keeps each stack together, as the old
+	 * column for each new column.
+	 */
+	private static final int[][] COLUMN_ORDERS = buildColumnOrders();
+
+	/**
+	 * The smallest form found so far. When a smaller row is found, the
+	 * rows after it are set to the maximum, to be filled in as the search
+	 * goes deeper.
+	 */
+	private final int[] best = new int[BOARD_SIZE];
+
+	/**
+	 * The puzzle being canonicalized, possibly transposed.
+	 */
+	private final int[] grid = new int[BOARD_SIZE];
+
+	/**
+	 * The given cells of each row, as a bit for each column, without and
+	 * with transposing.
+	 */
+	private final int[][] givenMasks = new int[2][ROW_COL_SEC_SIZE];
+
+	/**
+	 * The column order being tried.
+	 */
+	private int[] columns;
+
+	/**
+	 * The label given to each digit (0 for none yet) by the rows above each
+	 * depth, four bits per digit, and the next label to give out.
+	 */
+	private final long[] labels = new long[ROW_COL_SEC_SIZE + 1];
+
+	private final int[] nextLabel = new int[ROW_COL_SEC_SIZE + 1];
+
+	/**
+	 * The rows that tie for the smallest at each depth.
+	 */
+	private final int[][] candidates = new int[ROW_COL_SEC_SIZE][ROW_COL_SEC_SIZE];
+
+	/**
+	 * Scratch space for the row being compared and its labels.
+	 */
+	private final int[] rowValues = new int[ROW_COL_SEC_SIZE];
+
+	private long rowLabels;
+
+	private int rowNextLabel;
+
+	/**
+	 * Put the minimal form of the given puzzle of 81 values (0 for
+	 * unknown) into dest.
+	 */
+	void canonicalize(int[] puzzle, int[] dest) {
+		Arrays.fill(best, Integer.MAX_VALUE);
+		labels[0] = 0;
+		nextLabel[0] = 1;
+
+		// The first row is labeled 1, 2, 3... in order whichever digits it
+		// has, so it is smallest with its givens as far right as possible,
+		// which depends only on which of its cells are given. Find the
+		// smallest first row possible, and try only the rows and column
+		// orders that give it.
+		int smallest = Integer.MAX_VALUE;
+		for (int transpose = 0; transpose < 2; transpose++) {
+			for (int row = 0; row < ROW_COL_SEC_SIZE; row++) {
+				int mask = 0;
+				for (int col = 0; col < ROW_COL_SEC_SIZE; col++) {
+					int cell = (transpose == 0) ? QQWing.rowColumnToCell(row, col) : QQWing.rowColumnToCell(col, row);
+					if (puzzle[cell] != 0) mask |= 1 << col;
+				}
+				givenMasks[transpose][row] = mask;
+				smallest = Math.min(smallest, getSmallestPattern(mask));
+			}
+		}
+
+		for (int transpose = 0; transpose < 2; transpose++) {
+			for (int cell = 0; cell < BOARD_SIZE; cell++) {
+				grid[cell] = (transpose == 0) ? puzzle[cell] : puzzle[QQWing.rowColumnToCell(QQWing.cellToColumn(cell), QQWing.cellToRow(cell))];
+			}
+			for (int row = 0; row < ROW_COL_SEC_SIZE; row++) {
+				int mask = givenMasks[transpose][row];
+				if (getSmallestPattern(mask) != smallest) continue;
+				for (int[] order : COLUMN_ORDERS) {
+					if (getPattern(mask, order) != smallest) continue;
+					columns = order;
+					if (compareRow(0, row) < 0) {
+						System.arraycopy(rowValues, 0, best, 0, ROW_COL_SEC_SIZE);
+					}
+					labels[1] = rowLabels;
+					nextLabel[1] = rowNextLabel;
+					search(1, 1 << row, row / GRID_SIZE);
+				}
+			}
+		}
+		System.arraycopy(best, 0, dest, 0, BOARD_SIZE);
+	}
+
+	/**
+	 * The given cells of a row, as a bit for each column, in the order they
+	 * would be read with the given column order, first column in the high
+	 * bit. A smaller pattern means a smaller first row.
+	 */
+	private static int getPattern(int mask, int[] order) {
+		int pattern = 0;
+		for (int col = 0; col < ROW_COL_SEC_SIZE; col++) {
+			pattern = (pattern << 1) | ((mask >>> order[col]) & 1);
+		}
+		return pattern;
+	}
+
+	/**
+	 * The smallest pattern for the given cells of a row with any column
+	 * order: the givens at the right of each stack, and the stacks with
+	 * fewer givens first.
+	 */
+	private static int getSmallestPattern(int mask) {
+		int[] stackPatterns = new int[GRID_SIZE];
+		for (int stack = 0; stack < GRID_SIZE; stack++) {
+			stackPatterns[stack] = (1 << Integer.bitCount((mask >>> (stack * GRID_SIZE)) & 7)) - 1;
+		}
+		Arrays.sort(stackPatterns);
+		int pattern = 0;
+		for (int stack = 0; stack < GRID_SIZE; stack++) {
+			pattern = (pattern << GRID_SIZE) | stackPatterns[stack];
+		}
+		return pattern;
+	}
+
+	/**
+	 * Pick the row at the given depth, and those after it. The rows above
+	 * match the best found so far.
+	 *
+	 * @param usedRows A bit for each source row already picked
+	 * @param band The band of the row above, for the rows within a band
+	 */
+	private void search(int depth, int usedRows, int band) {
+		if (depth == ROW_COL_SEC_SIZE) return;
+
+		int count = 0;
+		int base = depth * ROW_COL_SEC_SIZE;
+		for (int row = 0; row < ROW_COL_SEC_SIZE; row++) {
+			if ((usedRows & (1 << row)) != 0) continue;
+			if (depth % GRID_SIZE == 0) {
+				// The first row of a band: any row from a band not used yet
+				if ((usedRows & (7 << (row / GRID_SIZE * GRID_SIZE))) != 0) continue;
+			} else if (row / GRID_SIZE != band) {
+				continue;
+			}
+			int compare = compareRow(depth, row);
+			if (compare > 0) continue;
+			if (compare < 0) {
+				System.arraycopy(rowValues, 0, best, base, ROW_COL_SEC_SIZE);
+				Arrays.fill(best, base + ROW_COL_SEC_SIZE, BOARD_SIZE, Integer.MAX_VALUE);
+				count = 0;
+			}
+			candidates[depth][count++] = row;
+		}
+
+		for (int i = 0; i < count; i++) {
+			int row = candidates[depth][i];
+			compareRow(depth, row);
+			labels[depth + 1] = rowLabels;
+			nextLabel[depth + 1] = rowNextLabel;
+			search(depth + 1, usedRows | (1 << row), row / GRID_SIZE);
+		}
+	}
+
+	/**
+	 * Label the given source row as the row at the given depth, leaving the
+	 * result in rowValues and rowLabels, and compare it to the best row at
+	 * that depth. Stops early if it turns out larger.
+	 *
+	 * @return Negative, zero, or positive as the row is smaller, the same,
+	 *         or larger
+	 */
+	private int compareRow(int depth, int row) {
+		long rowLabels = labels[depth];
+		int rowNextLabel = nextLabel[depth];
+		int base = depth * ROW_COL_SEC_SIZE;
+		int compare = 0;
+		for (int col = 0; col < ROW_COL_SEC_SIZE; col++) {
+			int value = grid[row * ROW_COL_SEC_SIZE + columns[col]];
+			if (value != 0) {
+				int shift = value << 2;
+				int label = (int) (rowLabels >>> shift) & 0xf;
+				if (label == 0) {
+					label = rowNextLabel++;
+					rowLabels |= ((long) label) << shift;
+				}
+				value = label;
+			}
+			rowValues[col] = value;
+			if (compare == 0) {
+				compare = Integer.compare(value, best[base + col]);
+				if (compare > 0) return compare;
+			}
+		}
+		this.rowLabels = rowLabels;
+		this.rowNextLabel = rowNextLabel;
+		return compare;
+	}
+
+	/**
+	 * A stable 64 bit hash of the 81 values of a puzzle.
+	 */
+	static long hash(int[] puzzle) {
+		// FNV-1a, with the SplitMix64 finalizer to spread the bits
+		long h = 0xcbf29ce484222325L;
+		for (int cell = 0; cell < BOARD_SIZE; cell++) {
+			h ^= puzzle[cell];
+			h *= 0x100000001b3L;
+		}
+		h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+		h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+		return h ^ (h >>> 31);
+	}
+
+	private static int[][] buildColumnOrders() {
+		int[][] orders = new int[6 * 6 * 6 * 6][];
+		int count = 0;
+		for (int[] stacks : ORDERS_OF_THREE) {
+			for (int[] first : ORDERS_OF_THREE) {
+				for (int[] second : ORDERS_OF_THREE) {
+					for (int[] third : ORDERS_OF_THREE) {
+						int[][] within = {first, second, third};
+						int[] order = new int[ROW_COL_SEC_SIZE];
+						for (int stack = 0; stack < GRID_SIZE; stack++) {
+							for (int i = 0; i < GRID_SIZE; i++) {
+								order[stack * GRID_SIZE + i] = stacks[stack] * GRID_SIZE + within[stack][i];
+							}
+						}
+						orders[count++] = order;
+					}
+				}
+			}
+		}
+		return orders;
+	}
+}
@@ -0,0 +1,637 @@
+// @formatter:off
+/*
+ * qqwing - Sudoku solver and generator
+ * Copyright (C) 2014 Stephen Ostermiller
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+// @formatter:on
+package com.qqwing;
+
+import static com.qqwing.QQWing.BOARD_SIZE;
+import static com.qqwing.QQWing.POSSIBILITY_SIZE;
+import static com.qqwing.QQWing.ROW_COL_SEC_SIZE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the solutions to a sudoku puzzle by treating it as an exact cover
+ * problem and searching it with Knuth's dancing links algorithm. Unlike the
+ * solver in QQWing, this doesn't use any of the human solving techniques and
+ * keeps no history, which makes it much faster for simply counting solutions.
+ *
+ * There are 324 constraint columns: each cell has one value, and each row,
+ * column, and section has each value once. There are 729 rows, one for each
+ * value that could go in each cell, numbered the same way as
+ * QQWing.getPossibilityIndex(). Each row covers exactly four columns.
+ *
+ * The links are restored after each count, so one instance can be used to
+ * count any number of puzzles, but only from one thread at a time. To count
+ * with many threads, the search is split by filling in the first few
+ * choices, giving each branch its own copy of the puzzle to count with the
+ * instance for the thread it runs on.
+ */
+final class DancingLinks {
+
+	private static final int COLUMN_COUNT = 4 * BOARD_SIZE;
+
+	private static final int NODES_PER_ROW = 4;
+
+	/**
+	 * The header that links together all the columns that still need to be
+	 * covered.
+	 */
+	private static final int ROOT = 0;
+
+	/**
+	 * Column headers are nodes 1 through COLUMN_COUNT, followed by the nodes
+	 * for each row.
+	 */
+	private static final int FIRST_ROW_NODE = COLUMN_COUNT + 1;
+
+	/**
+	 * Don't split the search into tasks more than this many choices deep.
+	 */
+	private static final int MAX_SPLIT_DEPTH = 8;
+
+	/**
+	 * Keep splitting the search while a worker has no more than this many
+	 * tasks queued up beyond what other workers could take.
+	 */
+	private static final int SURPLUS_TASKS = 3;
+
+	/**
+	 * Check the clock only once in this many (plus one) rows tried, since
+	 * reading it costs about as much as trying a row.
+	 */
+	private static final int CLOCK_CHECK_MASK = 0x3ff;
+
+	/**
+	 * How many rows a count takes from a shared budget at a time.
+	 */
+	private static final int SHARED_NODE_CLAIM = 1024;
+
+	/**
+	 * One instance for each thread counting in parallel.
+	 */
+	private static final ThreadLocal<DancingLinks> THREAD_LINKS = new ThreadLocal<DancingLinks>() {
+		@Override protected DancingLinks initialValue() {
+			return new DancingLinks();
+		}
+	};
+
+	private final int[] left;
+
+	private final int[] right;
+
+	private final int[] up;
+
+	private final int[] down;
+
+	/**
+	 * The column header for each node.
+	 */
+	private final int[] columnOf;
+
+	/**
+	 * The number of rows still in each column, indexed by column header.
+	 */
+	private final int[] size = new int[COLUMN_COUNT + 1];
+
+	/**
+	 * The rows selected for the givens of the puzzle being counted.
+	 */
+	private final int[] givenRows = new int[BOARD_SIZE];
+
+	private int givenCount = 0;
+
+	/**
+	 * Counting stops as soon as this is set, if there is one.
+	 */
+	private AtomicBoolean cancelFlag = null;
+
+	/**
+	 * The most rows that each count may try, and the most nanoseconds that
+	 * it may take, or zero for no limit.
+	 */
+	private long nodeBudget = 0;
+
+	private long timeLimit = 0;
+
+	/**
+	 * The budget shared with the other counts of a parallel count, used
+	 * instead of the limits above when set.
+	 */
+	private SharedBudget sharedBudget = null;
+
+	/**
+	 * The solutions found by all the counts of a parallel count, added to
+	 * as each one is found, and the number at which they all stop (zero for
+	 * no limit). Null when not part of a parallel count.
+	 */
+	private AtomicInteger sharedFound = null;
+
+	private int sharedLimit;
+
+	/**
+	 * The rows that the count in progress may try, and whether it has a
+	 * deadline.
+	 */
+	private long nodeAllowance;
+
+	private boolean hasDeadline;
+
+	private long deadline;
+
+	/**
+	 * The rows tried and the deepest level of the search reached by the
+	 * last count, and whether it ran out of budget or time.
+	 */
+	private long nodeCount;
+
+	private int maxDepth;
+
+	private boolean budgetExhausted;
+
+	DancingLinks() {
+		int nodeCount = FIRST_ROW_NODE + POSSIBILITY_SIZE * NODES_PER_ROW;
+		left = new int[nodeCount];
+		right = new int[nodeCount];
+		up = new int[nodeCount];
+		down = new int[nodeCount];
+		columnOf = new int[nodeCount];
+
+		for (int header = 0; header <= COLUMN_COUNT; header++) {
+			left[header] = (header == 0) ? COLUMN_COUNT : header - 1;
+			right[header] = (header == COLUMN_COUNT) ? 0 : header + 1;
+			up[header] = header;
+			down[header] = header;
+			columnOf[header] = header;
+		}
+
+		for (int row = 0; row < POSSIBILITY_SIZE; row++) {
+			int cell = row / ROW_COL_SEC_SIZE;
+			int valIndex = row % ROW_COL_SEC_SIZE;
+			int[] headers = {
+				1 + cell,
+				1 + BOARD_SIZE + QQWing.cellToRow(cell) * ROW_COL_SEC_SIZE + valIndex,
+				1 + 2 * BOARD_SIZE + QQWing.cellToColumn(cell) * ROW_COL_SEC_SIZE + valIndex,
+				1 + 3 * BOARD_SIZE + QQWing.cellToSection(cell) * ROW_COL_SEC_SIZE + valIndex
+			};
+			int first = rowNode(row);
+			for (int i = 0; i < NODES_PER_ROW; i++) {
+				int node = first + i;
+				int header = headers[i];
+				left[node] = first + (i + NODES_PER_ROW - 1) % NODES_PER_ROW;
+				right[node] = first + (i + 1) % NODES_PER_ROW;
+				columnOf[node] = header;
+				up[node] = up[header];
+				down[node] = header;
+				down[up[header]] = node;
+				up[header] = node;
+				size[header]++;
+			}
+		}
+	}
+
+	/**
+	 * The first of the four nodes for the given row (0-728).
+	 */
+	private static int rowNode(int row) {
+		return FIRST_ROW_NODE + row * NODES_PER_ROW;
+	}
+
+	/**
+	 * Set a flag that stops counting once it is set, or null for none. A
+	 * cancelled count returns the solutions found so far.
+	 */
+	void setCancelFlag(AtomicBoolean flag) {
+		cancelFlag = flag;
+	}
+
+	/**
+	 * Limit the rows that each count may try and the nanoseconds that it
+	 * may take, zero for no limit. A count that runs out returns the
+	 * solutions found so far.
+	 */
+	void setBudget(long nodes, long nanoseconds) {
+		nodeBudget = nodes;
+		timeLimit = nanoseconds;
+	}
+
+	/**
+	 * Take the limits for each count from the given budget shared by the
+	 * counts of a parallel count, or null to use the ones from setBudget().
+	 */
+	void setSharedBudget(SharedBudget budget) {
+		sharedBudget = budget;
+	}
+
+	/**
+	 * Add each solution found to the given count shared by all the counts
+	 * of a parallel count, and stop once it reaches the limit (zero for no
+	 * limit). Null for none.
+	 */
+	void setSharedFound(AtomicInteger found, int limit) {
+		sharedFound = found;
+		sharedLimit = limit;
+	}
+
+	/**
+	 * The number of rows tried by the last count.
+	 */
+	long getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * The deepest level of the search reached by the last count.
+	 */
+	int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Whether the last count stopped because it ran out of budget or time.
+	 */
+	boolean isBudgetExhausted() {
+		return budgetExhausted;
+	}
+
+	/**
+	 * Count the solutions to the given puzzle of 81 values (0 for unknown),
+	 * stopping once the limit is reached.
+	 *
+	 * @param limit Stop counting at this many solutions, or zero to count
+	 *        them all
+	 * @return The number of solutions, no more than the limit
+	 */
+	int countSolutions(int[] puzzle, int limit) {
+		if (limit <= 0) limit = Integer.MAX_VALUE;
+		nodeCount = 0;
+		maxDepth = 0;
+		budgetExhausted = false;
+		if (sharedBudget != null) {
+			// Rows are taken from the shared budget as they are needed
+			nodeAllowance = sharedBudget.isNodeLimited() ? 0 : Long.MAX_VALUE;
+			hasDeadline = sharedBudget.hasDeadline;
+			deadline = sharedBudget.deadline;
+		} else {
+			nodeAllowance = nodeBudget > 0 ? nodeBudget : Long.MAX_VALUE;
+			hasDeadline = timeLimit > 0;
+			if (hasDeadline) deadline = System.nanoTime() + timeLimit;
+		}
+		int solutions = selectGivens(puzzle) ? search(limit, 0, 0) : 0;
+		deselectGivens();
+		if (sharedBudget != null) sharedBudget.finish(this);
+		return solutions;
+	}
+
+	/**
+	 * Count the solutions to the given puzzle of 81 values (0 for unknown)
+	 * with the threads of the given pool, stopping once the limit is
+	 * reached.
+	 *
+	 * @param limit Stop counting at this many solutions, or zero to count
+	 *        them all
+	 * @param cancel Stops all the threads counting once it is set, or null
+	 *        for none
+	 * @param budget The rows and time that all the threads together may use
+	 * @return The number of solutions, no more than the limit
+	 */
+	static int countSolutions(int[] puzzle, int limit, ForkJoinPool pool, AtomicBoolean cancel, SharedBudget budget) {
+		int solutions = pool.invoke(new CountTask(puzzle, 0, limit, new AtomicInteger(0), cancel, budget));
+		if (limit > 0 && solutions > limit) solutions = limit;
+		return solutions;
+	}
+
+	/**
+	 * Find the constraint with the fewest choices left for the given
+	 * puzzle, the place to split the search.
+	 *
+	 * @param rows Filled with the rows that could satisfy the constraint
+	 * @return The number of rows, 0 if the puzzle has no solutions, or -1
+	 *         if it is already solved
+	 */
+	private int getBranchRows(int[] puzzle, int[] rows) {
+		int count = 0;
+		if (!selectGivens(puzzle)) {
+			count = 0;
+		} else if (right[ROOT] == ROOT) {
+			count = -1;
+		} else {
+			int best = right[ROOT];
+			for (int header = right[best]; header != ROOT; header = right[header]) {
+				if (size[header] < size[best]) best = header;
+			}
+			for (int node = down[best]; node != best; node = down[node]) {
+				rows[count++] = (node - FIRST_ROW_NODE) / NODES_PER_ROW;
+			}
+		}
+		deselectGivens();
+		return count;
+	}
+
+	/**
+	 * Select the rows for the givens of the puzzle.
+	 *
+	 * @return false if two of the givens conflict with each other
+	 */
+	private boolean selectGivens(int[] puzzle) {
+		givenCount = 0;
+		for (int cell = 0; cell < BOARD_SIZE; cell++) {
+			if (puzzle[cell] != 0) {
+				int row = QQWing.getPossibilityIndex(puzzle[cell] - 1, cell);
+				if (isRowCovered(row)) return false;
+				selectRow(row);
+				givenRows[givenCount++] = row;
+			}
+		}
+		return true;
+	}
+
+	private void deselectGivens() {
+		while (givenCount > 0) {
+			deselectRow(givenRows[--givenCount]);
+		}
+	}
+
+	/**
+	 * Counts the solutions to one branch of the search, splitting it into
+	 * more tasks while there are idle workers to take them.
+	 */
+	private static final class CountTask extends RecursiveTask<Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] puzzle;
+
+		private final int depth;
+
+		private final int limit;
+
+		/**
+		 * The solutions found by all the tasks so far, so that they can
+		 * stop once the limit is reached.
+		 */
+		private final AtomicInteger found;
+
+		private final AtomicBoolean cancelFlag;
+
+		private final SharedBudget budget;
+
+		CountTask(int[] puzzle, int depth, int limit, AtomicInteger found, AtomicBoolean cancelFlag, SharedBudget budget) {
+			this.puzzle = puzzle;
+			this.depth = depth;
+			this.limit = limit;
+			this.found = found;
+			this.cancelFlag = cancelFlag;
+			this.budget = budget;
+		}
+
+		@Override protected Integer compute() {
+			if (limit > 0 && found.get() >= limit) return 0;
+			if (cancelFlag != null && cancelFlag.get()) return 0;
+			if (budget.isExhausted()) return 0;
+			DancingLinks links = THREAD_LINKS.get();
+			if (depth < MAX_SPLIT_DEPTH && getSurplusQueuedTaskCount() <= SURPLUS_TASKS) {
+				int[] rows = new int[ROW_COL_SEC_SIZE];
+				int count = links.getBranchRows(puzzle, rows);
+				if (count == 0) return 0;
+				if (count > 0) {
+					// One branch for each way to satisfy the constraint,
+					// each with that value filled in
+					List<CountTask> branches = new ArrayList<CountTask>(count);
+					for (int i = 0; i < count; i++) {
+						int[] branch = puzzle.clone();
+						branch[rows[i] / ROW_COL_SEC_SIZE] = rows[i] % ROW_COL_SEC_SIZE + 1;
+						branches.add(new CountTask(branch, depth + 1, limit, found, cancelFlag, budget));
+					}
+					int solutions = 0;
+					for (CountTask branch : invokeAll(branches)) {
+						solutions += branch.join();
+					}
+					return solutions;
+				}
+			}
+			int remaining = 0;
+			if (limit > 0) {
+				remaining = limit - found.get();
+				if (remaining <= 0) return 0;
+			}
+			links.setCancelFlag(cancelFlag);
+			links.setSharedBudget(budget);
+			links.setSharedFound(found, limit);
+			int solutions = links.countSolutions(puzzle, remaining);
+			links.setSharedBudget(null);
+			links.setSharedFound(null, 0);
+			budget.noteDepth(depth + links.getMaxDepth());
+			return solutions;
+		}
+	}
+
+	/**
+	 * The rows and time that the counts of one parallel count may use
+	 * between them, and what they used. Each count takes rows from the
+	 * budget a batch at a time, and gives back the ones it didn't use.
+	 */
+	static final class SharedBudget {
+
+		/**
+		 * The rows left to take, or null for no limit.
+		 */
+		private final AtomicLong nodesLeft;
+
+		private final boolean hasDeadline;
+
+		private final long deadline;
+
+		private final AtomicLong nodeCount = new AtomicLong(0);
+
+		private final AtomicInteger maxDepth = new AtomicInteger(0);
+
+		private final AtomicBoolean exhausted = new AtomicBoolean(false);
+
+		/**
+		 * @param nodes The most rows to try, or zero for no limit
+		 * @param nanoseconds The most time to take from now, or zero for no
+		 *        limit
+		 */
+		SharedBudget(long nodes, long nanoseconds) {
+			nodesLeft = (nodes > 0) ? new AtomicLong(nodes) : null;
+			hasDeadline = nanoseconds > 0;
+			deadline = System.nanoTime() + nanoseconds;
+		}
+
+		boolean isNodeLimited() {
+			return nodesLeft != null;
+		}
+
+		/**
+		 * Take up to a batch of rows.
+		 *
+		 * @return The number of rows taken, zero once none are left
+		 */
+		long claim() {
+			long before = nodesLeft.getAndAdd(-SHARED_NODE_CLAIM);
+			return (before <= 0) ? 0 : Math.min(before, SHARED_NODE_CLAIM);
+		}
+
+		/**
+		 * Whether the rows or time have run out. Checks the clock.
+		 */
+		boolean isExhausted() {
+			if (!exhausted.get() && hasDeadline && System.nanoTime() - deadline >= 0) exhausted.set(true);
+			return exhausted.get();
+		}
+
+		void noteDepth(int depth) {
+			int deepest = maxDepth.get();
+			while (depth > deepest && !maxDepth.compareAndSet(deepest, depth)) {
+				deepest = maxDepth.get();
+			}
+		}
+
+		/**
+		 * Record what a count used, giving back the rows it took but
+		 * didn't try.
+		 */
+		void finish(DancingLinks links) {
+			nodeCount.addAndGet(links.nodeCount);
+			if (nodesLeft != null && links.nodeAllowance > links.nodeCount) nodesLeft.addAndGet(links.nodeAllowance - links.nodeCount);
+			if (links.budgetExhausted) exhausted.set(true);
+		}
+
+		long getNodeCount() {
+			return nodeCount.get();
+		}
+
+		int getMaxDepth() {
+			return maxDepth.get();
+		}
+	}
+
+	/**
+	 * Whether any of the columns for the given row have already been
+	 * covered, so the row can no longer be part of a solution.
+	 */
+	private boolean isRowCovered(int row) {
+		int first = rowNode(row);
+		for (int i = 0; i < NODES_PER_ROW; i++) {
+			int header = columnOf[first + i];
+			if (left[right[header]] != header) return true;
+		}
+		return false;
+	}
+
+	private int search(int limit, int found, int depth) {
+		if (right[ROOT] == ROOT) {
+			if (sharedFound != null) sharedFound.incrementAndGet();
+			return found + 1;
+		}
+		if (depth > maxDepth) maxDepth = depth;
+
+		// Branch on the column with the fewest rows left
+		int best = right[ROOT];
+		for (int header = right[best]; header != ROOT && size[best] > 1; header = right[header]) {
+			if (size[header] < size[best]) best = header;
+		}
+		if (size[best] == 0) return found;
+
+		cover(best);
+		for (int node = down[best]; node != best && found < limit && !isStopped(); node = down[node]) {
+			nodeCount++;
+			for (int other = right[node]; other != node; other = right[other]) {
+				cover(columnOf[other]);
+			}
+			found = search(limit, found, depth + 1);
+			for (int other = left[node]; other != node; other = left[other]) {
+				uncover(columnOf[other]);
+			}
+		}
+		uncover(best);
+		return found;
+	}
+
+	/**
+	 * Whether the count has been cancelled, has run out of budget or time,
+	 * or is part of a parallel count that has found enough solutions.
+	 */
+	private boolean isStopped() {
+		if (budgetExhausted) return true;
+		if ((nodeCount >= nodeAllowance && !claimNodes()) || (hasDeadline && (nodeCount & CLOCK_CHECK_MASK) == 0 && System.nanoTime() - deadline >= 0)) {
+			budgetExhausted = true;
+			return true;
+		}
+		if (sharedLimit > 0 && sharedFound.get() >= sharedLimit) return true;
+		return cancelFlag != null && cancelFlag.get();
+	}
+
+	/**
+	 * Take more rows from the shared budget, if there is one.
+	 *
+	 * @return false if there are no more rows to try
+	 */
+	private boolean claimNodes() {
+		if (sharedBudget == null) return false;
+		long claimed = sharedBudget.claim();
+		nodeAllowance += claimed;
+		return claimed > 0;
+	}
+
+	private void selectRow(int row) {
+		int first = rowNode(row);
+		for (int i = 0; i < NODES_PER_ROW; i++) {
+			cover(columnOf[first + i]);
+		}
+	}
+
+	private void deselectRow(int row) {
+		int first = rowNode(row);
+		for (int i = NODES_PER_ROW - 1; i >= 0; i--) {
+			uncover(columnOf[first + i]);
+		}
+	}
+
+	private void cover(int header) {
+		right[left[header]] = right[header];
+		left[right[header]] = left[header];
+		for (int row = down[header]; row != header; row = down[row]) {
+			for (int node = right[row]; node != row; node = right[node]) {
+				up[down[node]] = up[node];
+				down[up[node]] = down[node];
+				size[columnOf[node]]--;
+			}
+		}
+	}
+
+	private void uncover(int header) {
+		for (int row = up[header]; row != header; row = up[row]) {
+			for (int node = left[row]; node != row; node = left[node]) {
+				size[columnOf[node]]++;
+				up[down[node]] = node;
+				down[up[node]] = node;
+			}
+		}
+		right[left[header]] = header;
+		left[right[header]] = header;
+	}
+}
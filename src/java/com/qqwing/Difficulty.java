@@ -27,6 +27,7 @@ public enum Difficulty {
 	SIMPLE,
 	EASY,
 	INTERMEDIATE,
+	HARD,
 	EXPERT;
 
 	public static Difficulty get(String s) {
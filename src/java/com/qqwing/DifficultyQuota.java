@@ -0,0 +1,96 @@
+// @formatter:off
+/*
+ * qqwing - Sudoku solver and generator
+ * Copyright (C) 2014 Stephen Ostermiller
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+// @formatter:on
+package com.qqwing;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The number of puzzles still wanted at each difficulty when generating a
+ * mix of difficulties at once. Each generated puzzle goes to the bucket for
+ * its difficulty if that bucket is still open. Safe to share between
+ * threads.
+ */
+final class DifficultyQuota {
+
+	private static final Difficulty[] DIFFICULTIES = Difficulty.values();
+
+	/**
+	 * Puzzles still wanted, indexed by difficulty ordinal.
+	 */
+	private final AtomicIntegerArray remaining = new AtomicIntegerArray(DIFFICULTIES.length);
+
+	private int total = 0;
+
+	/**
+	 * Set the number of puzzles wanted for the given difficulty. Must be
+	 * called before the quota is shared between threads.
+	 */
+	void setQuota(Difficulty difficulty, int count) {
+		total += count - remaining.get(difficulty.ordinal());
+		remaining.set(difficulty.ordinal(), count);
+	}
+
+	int getQuota(Difficulty difficulty) {
+		return remaining.get(difficulty.ordinal());
+	}
+
+	/**
+	 * The total number of puzzles wanted across all difficulties when the
+	 * quota was set up.
+	 */
+	int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Take up to the given number of spots in the bucket for the given
+	 * difficulty.
+	 *
+	 * @return The number of spots taken, zero if the bucket is already full
+	 */
+	int claim(Difficulty difficulty, int count) {
+		if (difficulty == Difficulty.UNKNOWN) return 0;
+		int i = difficulty.ordinal();
+		while (true) {
+			int left = remaining.get(i);
+			if (left <= 0) return 0;
+			int taken = Math.min(left, count);
+			if (remaining.compareAndSet(i, left, left - taken)) return taken;
+		}
+	}
+
+	/**
+	 * The hardest difficulty whose bucket is still open. Puzzles harder than
+	 * this are of no use and can be rejected without rating them fully.
+	 *
+	 * @return The difficulty, or Difficulty.UNKNOWN when all buckets are full
+	 */
+	Difficulty getHardestOpen() {
+		for (int i = DIFFICULTIES.length - 1; i > 0; i--) {
+			if (remaining.get(i) > 0) return DIFFICULTIES[i];
+		}
+		return Difficulty.UNKNOWN;
+	}
+
+	boolean isFull() {
+		return getHardestOpen() == Difficulty.UNKNOWN;
+	}
+}
@@ -0,0 +1,36 @@
+// @formatter:off
+/*
+ * qqwing - Sudoku solver and generator
+ * Copyright (C) 2014 Stephen Ostermiller
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+// @formatter:on
+package com.qqwing;
+
+/**
+ * Remembers the 64 bit hashes of puzzles seen so far, to suppress
+ * duplicates. Implementations are safe to share between threads.
+ */
+interface HashFilter {
+
+	/**
+	 * Record the hash as seen.
+	 *
+	 * @return false if the hash was (or, for filters that trade accuracy
+	 *         for memory, probably was) seen before
+	 */
+	boolean add(long hash);
+}
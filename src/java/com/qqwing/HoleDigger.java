@@ -0,0 +1,373 @@
+// @formatter:off
+/*
+ * qqwing - Sudoku solver and generator
+ * Copyright (C) 2014 Stephen Ostermiller
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+// @formatter:on
+package com.qqwing;
+
+import static com.qqwing.QQWing.ALL_POSSIBILITIES;
+import static com.qqwing.QQWing.BOARD_SIZE;
+import static com.qqwing.QQWing.ROW_COL_SEC_SIZE;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Removes clues one at a time from a puzzle with a known unique solution,
+ * keeping a clue only when the puzzle would have another solution without
+ * it.
+ *
+ * The values used in each row, column, and section are kept as bit masks
+ * that are updated as each clue is removed, rather than rebuilt for every
+ * check. Because the puzzle has exactly one solution before a removal, any
+ * other solution afterwards must differ from the known one in one of the
+ * removed cells. So the check searches only for solutions in which a
+ * removed cell holds some other value, and stops at the first one it finds.
+ * A check that is cancelled or runs out of budget keeps the clues, so the
+ * puzzle always stays unique.
+ *
+ * Not safe for use from more than one thread at a time, but
+ * checkRemovals() checks several removals at once with an instance for each
+ * thread.
+ */
+final class HoleDigger {
+
+	/**
+	 * Check the clock only once in this many (plus one) values tried.
+	 */
+	private static final int CLOCK_CHECK_MASK = 0x3ff;
+
+	/**
+	 * One instance for each thread checking removals in parallel.
+	 */
+	private static final ThreadLocal<HoleDigger> THREAD_DIGGERS = new ThreadLocal<HoleDigger>() {
+		@Override protected HoleDigger initialValue() {
+			return new HoleDigger();
+		}
+	};
+
+	/**
+	 * The current puzzle, 0 for cells that are not given.
+	 */
+	private final int[] puzzle = new int[BOARD_SIZE];
+
+	/**
+	 * The known solution to the puzzle.
+	 */
+	private final int[] solution = new int[BOARD_SIZE];
+
+	private final int[] rowUsed = new int[ROW_COL_SEC_SIZE];
+
+	private final int[] columnUsed = new int[ROW_COL_SEC_SIZE];
+
+	private final int[] sectionUsed = new int[ROW_COL_SEC_SIZE];
+
+	/**
+	 * Values that the search may place in each cell.
+	 */
+	private final int[] allowed = new int[BOARD_SIZE];
+
+	/**
+	 * The cells that are not given. The search fills them in order,
+	 * swapping the most constrained remaining cell to the front at each
+	 * level.
+	 */
+	private final int[] emptyCells = new int[BOARD_SIZE];
+
+	private int emptyCount;
+
+	private AtomicBoolean cancelFlag = null;
+
+	/**
+	 * The most values that each check may try and nanoseconds that it may
+	 * take, zero for no limit.
+	 */
+	private long nodeBudget = 0;
+
+	private long timeLimit = 0;
+
+	private long deadline;
+
+	private long nodeCount;
+
+	private boolean budgetExhausted;
+
+	/**
+	 * Set a flag that stops checking once it is set, or null for none.
+	 */
+	void setCancelFlag(AtomicBoolean flag) {
+		cancelFlag = flag;
+	}
+
+	/**
+	 * Limit the values that each check may try and the nanoseconds that it
+	 * may take, zero for no limit.
+	 */
+	void setBudget(long nodes, long nanoseconds) {
+		nodeBudget = nodes;
+		timeLimit = nanoseconds;
+	}
+
+	/**
+	 * Whether the last check ran out of budget or time.
+	 */
+	boolean isBudgetExhausted() {
+		return budgetExhausted;
+	}
+
+	/**
+	 * Start digging from the given puzzle (0 for unknown cells), which must
+	 * have the given solution as its only solution.
+	 */
+	void start(int[] givens, int[] knownSolution) {
+		for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
+			rowUsed[i] = 0;
+			columnUsed[i] = 0;
+			sectionUsed[i] = 0;
+		}
+		emptyCount = 0;
+		for (int cell = 0; cell < BOARD_SIZE; cell++) {
+			solution[cell] = knownSolution[cell];
+			allowed[cell] = ALL_POSSIBILITIES;
+			puzzle[cell] = 0;
+			if (givens[cell] != 0) {
+				place(cell, givens[cell]);
+			} else {
+				emptyCells[emptyCount++] = cell;
+			}
+		}
+	}
+
+	/**
+	 * Try to remove the given clues together. They stay removed only if the
+	 * solution is still unique without them, and not if the check is
+	 * cancelled or runs out of budget.
+	 *
+	 * @return true if the clues were removed
+	 */
+	boolean tryRemove(int[] cells, int count) {
+		nodeCount = 0;
+		budgetExhausted = false;
+		if (timeLimit > 0) deadline = System.nanoTime() + timeLimit;
+		for (int i = 0; i < count; i++) {
+			unplace(cells[i]);
+		}
+		boolean unique = true;
+		int checked = 0;
+		while (unique && checked < count) {
+			// Look for a solution with a different value in this cell. The
+			// cells checked before it can't differ in any solution, so fill
+			// them in to narrow the search.
+			int cell = cells[checked];
+			int value = solution[cell];
+			allowed[cell] = ALL_POSSIBILITIES & ~(1 << (value - 1));
+			unique = !search(0) && !isStopped();
+			allowed[cell] = ALL_POSSIBILITIES;
+			place(cell, value);
+			checked++;
+		}
+		if (unique) {
+			for (int i = 0; i < count; i++) {
+				unplace(cells[i]);
+			}
+		} else {
+			// Put back the clues that were never checked
+			for (int i = checked; i < count; i++) {
+				place(cells[i], solution[cells[i]]);
+			}
+		}
+		return unique;
+	}
+
+	/**
+	 * Check whether each of the given groups of clues could be removed on
+	 * its own from the puzzle, which must have the given solution as its
+	 * only solution. The checks run on the threads of the pool, each with
+	 * the given cancel flag and budget.
+	 *
+	 * @param first The first group to check
+	 * @param count The number of groups to check
+	 * @param removable Filled with whether each group checked could be
+	 *        removed, starting at index 0
+	 * @return true if any of the checks ran out of budget or time
+	 */
+	static boolean checkRemovals(int[] givens, int[] knownSolution, int[][] groups, int[] groupSizes, int first, int count, boolean[] removable, ForkJoinPool pool, AtomicBoolean cancel, long nodes, long nanoseconds) {
+		AtomicBoolean exhausted = new AtomicBoolean(false);
+		pool.invoke(new RemovalCheck(givens, knownSolution, groups, groupSizes, first, first, first + count, removable, cancel, nodes, nanoseconds, exhausted));
+		return exhausted.get();
+	}
+
+	/**
+	 * Checks a range of the groups of clues, splitting it in half until
+	 * there is one group to check.
+	 */
+	private static final class RemovalCheck extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] givens;
+
+		private final int[] knownSolution;
+
+		private final int[][] groups;
+
+		private final int[] groupSizes;
+
+		/**
+		 * The group whose result goes at index 0 of removable.
+		 */
+		private final int first;
+
+		private final int start;
+
+		private final int end;
+
+		private final boolean[] removable;
+
+		private final AtomicBoolean cancelFlag;
+
+		private final long nodeBudget;
+
+		private final long timeLimit;
+
+		/**
+		 * Set when any check runs out of budget or time.
+		 */
+		private final AtomicBoolean exhausted;
+
+		RemovalCheck(int[] givens, int[] knownSolution, int[][] groups, int[] groupSizes, int first, int start, int end, boolean[] removable, AtomicBoolean cancelFlag, long nodeBudget, long timeLimit, AtomicBoolean exhausted) {
+			this.givens = givens;
+			this.knownSolution = knownSolution;
+			this.groups = groups;
+			this.groupSizes = groupSizes;
+			this.first = first;
+			this.start = start;
+			this.end = end;
+			this.removable = removable;
+			this.cancelFlag = cancelFlag;
+			this.nodeBudget = nodeBudget;
+			this.timeLimit = timeLimit;
+			this.exhausted = exhausted;
+		}
+
+		@Override protected void compute() {
+			if (end - start > 1) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new RemovalCheck(givens, knownSolution, groups, groupSizes, first, start, middle, removable, cancelFlag, nodeBudget, timeLimit, exhausted), new RemovalCheck(givens, knownSolution, groups, groupSizes, first, middle, end, removable, cancelFlag, nodeBudget, timeLimit, exhausted));
+			} else {
+				HoleDigger digger = THREAD_DIGGERS.get();
+				digger.setCancelFlag(cancelFlag);
+				digger.setBudget(nodeBudget, timeLimit);
+				digger.start(givens, knownSolution);
+				removable[start - first] = digger.tryRemove(groups[start], groupSizes[start]);
+				if (digger.isBudgetExhausted()) exhausted.set(true);
+			}
+		}
+	}
+
+	/**
+	 * Whether the empty cells from the given index onward can be filled in.
+	 * Leaves the board as it found it. Returns false if stopped.
+	 */
+	private boolean search(int first) {
+		if (first >= emptyCount) return true;
+
+		// Branch on the cell with the fewest possible values
+		int best = first;
+		int bestPossible = ALL_POSSIBILITIES;
+		int bestCount = ROW_COL_SEC_SIZE + 1;
+		for (int i = first; i < emptyCount && bestCount > 1; i++) {
+			int possible = getPossible(emptyCells[i]);
+			int count = Integer.bitCount(possible);
+			if (count < bestCount) {
+				if (count == 0) return false;
+				best = i;
+				bestPossible = possible;
+				bestCount = count;
+			}
+		}
+		int cell = emptyCells[best];
+		emptyCells[best] = emptyCells[first];
+		emptyCells[first] = cell;
+
+		boolean found = false;
+		for (int possible = bestPossible; !found && possible != 0 && !isStopped(); possible &= possible - 1) {
+			nodeCount++;
+			int value = Integer.numberOfTrailingZeros(possible) + 1;
+			setUsed(cell, value);
+			found = search(first + 1);
+			clearUsed(cell, value);
+		}
+		return found;
+	}
+
+	/**
+	 * Whether the check has been cancelled or has run out of budget or time.
+	 */
+	private boolean isStopped() {
+		if (budgetExhausted) return true;
+		if ((nodeBudget > 0 && nodeCount >= nodeBudget) || (timeLimit > 0 && (nodeCount & CLOCK_CHECK_MASK) == 0 && System.nanoTime() - deadline >= 0)) {
+			budgetExhausted = true;
+			return true;
+		}
+		return cancelFlag != null && cancelFlag.get();
+	}
+
+	private int getPossible(int cell) {
+		return allowed[cell] & ~(rowUsed[QQWing.cellToRow(cell)] | columnUsed[QQWing.cellToColumn(cell)] | sectionUsed[QQWing.cellToSection(cell)]);
+	}
+
+	/**
+	 * Make the cell a given, moving it out of the empty cells.
+	 */
+	private void place(int cell, int value) {
+		puzzle[cell] = value;
+		setUsed(cell, value);
+		for (int i = 0; i < emptyCount; i++) {
+			if (emptyCells[i] == cell) {
+				emptyCells[i] = emptyCells[--emptyCount];
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Remove the given from the cell, adding it to the end of the empty
+	 * cells.
+	 */
+	private void unplace(int cell) {
+		clearUsed(cell, puzzle[cell]);
+		puzzle[cell] = 0;
+		emptyCells[emptyCount++] = cell;
+	}
+
+	private void setUsed(int cell, int value) {
+		int bit = 1 << (value - 1);
+		rowUsed[QQWing.cellToRow(cell)] |= bit;
+		columnUsed[QQWing.cellToColumn(cell)] |= bit;
+		sectionUsed[QQWing.cellToSection(cell)] |= bit;
+	}
+
+	private void clearUsed(int cell, int value) {
+		int bit = ~(1 << (value - 1));
+		rowUsed[QQWing.cellToRow(cell)] &= bit;
+		columnUsed[QQWing.cellToColumn(cell)] &= bit;
+		sectionUsed[QQWing.cellToSection(cell)] &= bit;
+	}
+}
@@ -37,7 +37,24 @@ public enum LogType {
 	COLUMN_BOX("Remove possibilities for section because all values are in one column"),
 	HIDDEN_PAIR_ROW("Remove possibilities from hidden pair in row"),
 	HIDDEN_PAIR_COLUMN("Remove possibilities from hidden pair in column"),
-	HIDDEN_PAIR_SECTION("Remove possibilities from hidden pair in section");
+	HIDDEN_PAIR_SECTION("Remove possibilities from hidden pair in section"),
+	NAKED_TRIPLE_ROW("Remove possibilities for naked triple in row"),
+	NAKED_TRIPLE_COLUMN("Remove possibilities for naked triple in column"),
+	NAKED_TRIPLE_SECTION("Remove possibilities for naked triple in section"),
+	HIDDEN_TRIPLE_ROW("Remove possibilities from hidden triple in row"),
+	HIDDEN_TRIPLE_COLUMN("Remove possibilities from hidden triple in column"),
+	HIDDEN_TRIPLE_SECTION("Remove possibilities from hidden triple in section"),
+	NAKED_QUAD_ROW("Remove possibilities for naked quad in row"),
+	NAKED_QUAD_COLUMN("Remove possibilities for naked quad in column"),
+	NAKED_QUAD_SECTION("Remove possibilities for naked quad in section"),
+	HIDDEN_QUAD_ROW("Remove possibilities from hidden quad in row"),
+	HIDDEN_QUAD_COLUMN("Remove possibilities from hidden quad in column"),
+	HIDDEN_QUAD_SECTION("Remove possibilities from hidden quad in section"),
+	X_WING_ROW("Remove possibilities from columns for X-Wing in rows"),
+	X_WING_COLUMN("Remove possibilities from rows for X-Wing in columns"),
+	SWORDFISH_ROW("Remove possibilities from columns for Swordfish in rows"),
+	SWORDFISH_COLUMN("Remove possibilities from rows for Swordfish in columns"),
+	XY_WING("Remove possibilities seen by both wings of XY-Wing");
 
 	private String description;
 
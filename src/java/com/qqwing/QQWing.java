@@ -22,11 +22,13 @@
 // @formatter:on
 package com.qqwing;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The board containing all the memory structures and methods for solving or
@@ -48,7 +50,94 @@ public class QQWing {
 
 	public static final int POSSIBILITY_SIZE = (BOARD_SIZE * ROW_COL_SEC_SIZE);
 
-	private static Random random = new Random();
+	static final int ALL_POSSIBILITIES = (1 << ROW_COL_SEC_SIZE) - 1;
+
+	/**
+	 * The row, column, and section log types for naked subsets, indexed by
+	 * the size of the subset.
+	 */
+	private static final LogType[][] NAKED_SUBSET_LOG_TYPES = {
+		null,
+		null,
+		{LogType.NAKED_PAIR_ROW, LogType.NAKED_PAIR_COLUMN, LogType.NAKED_PAIR_SECTION},
+		{LogType.NAKED_TRIPLE_ROW, LogType.NAKED_TRIPLE_COLUMN, LogType.NAKED_TRIPLE_SECTION},
+		{LogType.NAKED_QUAD_ROW, LogType.NAKED_QUAD_COLUMN, LogType.NAKED_QUAD_SECTION}
+	};
+
+	/**
+	 * The row, column, and section log types for hidden subsets, indexed by
+	 * the size of the subset.
+	 */
+	private static final LogType[][] HIDDEN_SUBSET_LOG_TYPES = {
+		null,
+		null,
+		{LogType.HIDDEN_PAIR_ROW, LogType.HIDDEN_PAIR_COLUMN, LogType.HIDDEN_PAIR_SECTION},
+		{LogType.HIDDEN_TRIPLE_ROW, LogType.HIDDEN_TRIPLE_COLUMN, LogType.HIDDEN_TRIPLE_SECTION},
+		{LogType.HIDDEN_QUAD_ROW, LogType.HIDDEN_QUAD_COLUMN, LogType.HIDDEN_QUAD_SECTION}
+	};
+
+	/**
+	 * The row and column log types for fish, indexed by the number of lines
+	 * in the fish.
+	 */
+	private static final LogType[][] FISH_LOG_TYPES = {
+		null,
+		null,
+		{LogType.X_WING_ROW, LogType.X_WING_COLUMN},
+		{LogType.SWORDFISH_ROW, LogType.SWORDFISH_COLUMN}
+	};
+
+	private static final LogType[] LOG_TYPES = LogType.values();
+
+	/**
+	 * The log type that each log type becomes when the grid is transposed,
+	 * indexed by ordinal: rows become columns and columns become rows.
+	 */
+	private static final LogType[] TRANSPOSED_LOG_TYPES = new LogType[LOG_TYPES.length];
+	static {
+		for (LogType type : LOG_TYPES) {
+			String name = type.name();
+			if (name.contains("ROW")) {
+				name = name.replace("ROW", "COLUMN");
+			} else if (name.contains("COLUMN")) {
+				name = name.replace("COLUMN", "ROW");
+			}
+			TRANSPOSED_LOG_TYPES[type.ordinal()] = LogType.valueOf(name);
+		}
+	}
+
+	/**
+	 * The number of units (rows, columns, and sections) on the board.
+	 */
+	static final int UNIT_COUNT = 3 * ROW_COL_SEC_SIZE;
+
+	/**
+	 * The cells (0-80) in each unit. Units 0-8 are the rows, 9-17 are the
+	 * columns, and 18-26 are the sections.
+	 */
+	static final int[][] UNIT_CELLS = new int[UNIT_COUNT][ROW_COL_SEC_SIZE];
+
+	/**
+	 * The 20 other cells that share a row, column, or section with each cell,
+	 * in order.
+	 */
+	static final int[][] PEERS = new int[BOARD_SIZE][];
+	static {
+		for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
+			for (int j = 0; j < ROW_COL_SEC_SIZE; j++) {
+				UNIT_CELLS[i][j] = rowColumnToCell(i, j);
+				UNIT_CELLS[ROW_COL_SEC_SIZE + i][j] = rowColumnToCell(j, i);
+				UNIT_CELLS[2 * ROW_COL_SEC_SIZE + i][j] = sectionToCell(i, j);
+			}
+		}
+		for (int cell = 0; cell < BOARD_SIZE; cell++) {
+			PEERS[cell] = new int[2 * (ROW_COL_SEC_SIZE - 1) + (GRID_SIZE - 1) * (GRID_SIZE - 1)];
+			int peerCount = 0;
+			for (int other = 0; other < BOARD_SIZE; other++) {
+				if (other != cell && isPeer(cell, other)) PEERS[cell][peerCount++] = other;
+			}
+		}
+	}
 
 	/**
 	 * The last round of solving
@@ -69,20 +158,75 @@ public class QQWing {
 	private int[] solution = new int[BOARD_SIZE];
 
 	/**
-	 * Recursion depth at which each of the numbers in the solution were placed.
-	 * Useful for backing out solve branches that don't lead to a solution.
+	 * The 81 bit masks of the values that are still possible for each cell.
+	 * Bit 0 is set when 1 is a possibility, through bit 8 for 9. A value is
+	 * a possibility if it could still be filled in according to the Sudoku
+	 * rules.
+	 */
+	private int[] candidates = new int[BOARD_SIZE];
+
+	/**
+	 * Bit masks (in the same format as candidates) of the values that have
+	 * been placed in each row, column, and section of the solution.
+	 */
+	private int[] rowPlaced = new int[ROW_COL_SEC_SIZE];
+
+	private int[] columnPlaced = new int[ROW_COL_SEC_SIZE];
+
+	private int[] sectionPlaced = new int[ROW_COL_SEC_SIZE];
+
+	/**
+	 * Every change made to the solution and the candidates since the last
+	 * reset, in the order it was made, so that a round (recursion level) can
+	 * be backed out by undoing only the changes made in that round. Each
+	 * entry packs the round, the position, and either the value index that was
+	 * eliminated or TRAIL_MARK when a value was placed in the solution. Each
+	 * possibility can be eliminated and each cell marked at most once, which
+	 * bounds the size of the trail.
+	 */
+	private int[] trail = new int[POSSIBILITY_SIZE + BOARD_SIZE];
+
+	/**
+	 * The number of entries in use at the start of the trail.
+	 */
+	private int trailSize = 0;
+
+	private static final int TRAIL_MARK = 0xf;
+
+	/**
+	 * For each unit (as numbered in UNIT_CELLS) and value, a bit mask of the
+	 * cells in the unit in which the value is still possible. Indexed by
+	 * unit * 9 + value index, with bit i standing for UNIT_CELLS[unit][i].
+	 */
+	private int[] valuePositions = new int[UNIT_COUNT * ROW_COL_SEC_SIZE];
+
+	/**
+	 * The number of bits set in each of the valuePositions.
+	 */
+	private int[] valuePositionCounts = new int[UNIT_COUNT * ROW_COL_SEC_SIZE];
+
+	/**
+	 * For each unit, a bit mask of the values that are possible in exactly
+	 * one of its cells (hidden singles).
+	 */
+	private int[] hiddenSingleValues = new int[UNIT_COUNT];
+
+	/**
+	 * Bit set of the units with any hidden singles.
+	 */
+	private int unitsWithHiddenSingles = 0;
+
+	/**
+	 * The number of cells that do not yet have a value in the solution.
 	 */
-	private int[] solutionRound = new int[BOARD_SIZE];
+	private int unsolvedCount = BOARD_SIZE;
 
 	/**
-	 * The 729 integers that make up a the possible values for a Sudoku puzzle.
-	 * (9 possibilities for each of 81 squares). If possibilities[i] is zero,
-	 * then the possibility could still be filled in according to the Sudoku
-	 * rules. When a possibility is eliminated, possibilities[i] is assigned the
-	 * round (recursion level) at which it was determined that it could not be a
-	 * possibility.
+	 * The number of cells without a value in the solution that have no
+	 * possibilities left. When this is not zero, the puzzle can't be solved
+	 * from the current position.
 	 */
-	private int[] possibilities = new int[POSSIBILITY_SIZE];
+	private int emptyCellCount = 0;
 
 	/**
 	 * An array the size of the board (81) containing each of the numbers 0-n
@@ -97,6 +241,20 @@ public class QQWing {
 	 */
 	private int[] randomPossibilityArray = fillIncrementing(new int[ROW_COL_SEC_SIZE]);
 
+	/**
+	 * The index in randomBoardArray of each position (0-80).
+	 */
+	private int[] randomBoardRank = fillIncrementing(new int[BOARD_SIZE]);
+
+	/**
+	 * The cells without a value in the solution, grouped by how many
+	 * possibilities they have left (0-9). Each group is an 81 bit set, stored
+	 * as two longs, with bit i standing for the cell at randomBoardArray[i].
+	 * The lowest bit set in the smallest non-empty group is the cell that
+	 * should be guessed next.
+	 */
+	private long[] possibilityCountBuckets = new long[(ROW_COL_SEC_SIZE + 1) * 2];
+
 	/**
 	 * Whether or not to record history
 	 */
@@ -109,26 +267,299 @@ public class QQWing {
 
 	/**
 	 * A list of moves used to solve the puzzle. This list contains all moves,
-	 * even on solve branches that did not lead to a solution.
+	 * even on solve branches that did not lead to a solution. Each move is
+	 * packed into an int by packLogItem() so that recording history doesn't
+	 * create objects. LogItems are only created when asked for.
 	 */
-	private ArrayList<LogItem> solveHistory = new ArrayList<LogItem>();
+	private int[] solveHistory = new int[BOARD_SIZE * 2];
+
+	private int solveHistorySize = 0;
 
 	/**
 	 * A list of moves used to solve the puzzle. This list contains only the
 	 * moves needed to solve the puzzle, but doesn't contain information about
-	 * bad guesses.
+	 * bad guesses. Packed the same way as solveHistory. Kept even when history
+	 * isn't being recorded, so that the moves of a round can be taken off the
+	 * counts below when it is rolled back.
+	 */
+	private int[] solveInstructions = new int[BOARD_SIZE * 2];
+
+	private int solveInstructionsSize = 0;
+
+	/**
+	 * The number of solve instructions of each type, indexed by LogType
+	 * ordinal, so that statistics and the difficulty don't need to look
+	 * through the instructions.
+	 */
+	private int[] instructionCounts = new int[LOG_TYPES.length];
+
+	/**
+	 * The number of rounds rolled back since the last reset.
 	 */
-	private ArrayList<LogItem> solveInstructions = new ArrayList<LogItem>();
+	private int backtrackCount = 0;
 
 	/**
 	 * The style with which to print puzzles and solutions
 	 */
 	private PrintStyle printStyle = PrintStyle.READABLE;
 
+	/**
+	 * Whether to count solutions with the dancing links exact cover search
+	 * rather than with the solving techniques and guessing.
+	 */
+	private boolean exactCoverCounting = true;
+
+	/**
+	 * Exact cover search used to count solutions, created when first needed.
+	 */
+	private DancingLinks dancingLinks = null;
+
+	/**
+	 * Checks that removed clues leave the solution unique while generating,
+	 * created when first needed.
+	 */
+	private HoleDigger holeDigger = null;
+
+	/**
+	 * Threads to check clue removals on while generating, or null to check
+	 * them one at a time.
+	 */
+	private ForkJoinPool generatorPool = null;
+
+	/**
+	 * Solving, counting, and generating stop as soon as this is set, if
+	 * there is one.
+	 */
+	private AtomicBoolean cancelFlag = null;
+
+	/**
+	 * The most guesses that each solve or count may make, and the most
+	 * nanoseconds that it may take, or zero for no limit.
+	 */
+	private long searchBudget = 0;
+
+	private long searchTimeLimit = 0;
+
+	private long searchDeadline;
+
+	/**
+	 * The guesses made and the deepest level of guessing reached by the
+	 * last solve or count, and whether it ran out of budget or time.
+	 */
+	private long searchNodeCount;
+
+	private int searchDepth;
+
+	private boolean budgetExhausted;
+
+	/**
+	 * The backtracks allowed before the first restart, unless set.
+	 */
+	public static final int DEFAULT_RESTART_BACKTRACKS = 128;
+
+	/**
+	 * How often solve() starts over with a new branching order, and the
+	 * backtracks allowed before the first restart.
+	 */
+	private RestartStrategy restartStrategy = RestartStrategy.NONE;
+
+	private int restartBacktracks = DEFAULT_RESTART_BACKTRACKS;
+
+	/**
+	 * The backtracks allowed before restarting the solve in progress, or
+	 * zero for no limit.
+	 */
+	private long restartLimit = 0;
+
+	/**
+	 * Whether the solve in progress has reached its restart limit.
+	 */
+	private boolean restartDue;
+
+	/**
+	 * The number of restarts made by the last solve.
+	 */
+	private int restartCount = 0;
+
+	/**
+	 * Finds the minimal form of puzzles, created when first needed.
+	 */
+	private Canonicalizer canonicalizer = null;
+
+	/**
+	 * The filled grid that a puzzle is being generated from.
+	 */
+	private final int[] generatedSolution = new int[BOARD_SIZE];
+
+	/**
+	 * The clues being removed together while generating: a cell and its
+	 * symmetric partners.
+	 */
+	private final int[] removedClues = new int[4];
+
+	/**
+	 * How many puzzles to generate from each grid in the solution pool
+	 * before replacing it with a newly solved one, so that a long run
+	 * doesn't keep rearranging the same few grids.
+	 */
+	private static final int SOLUTION_POOL_DRAWS = 8;
+
+	/**
+	 * How many filled grids to keep for generating puzzles, zero for none.
+	 */
+	private int solutionPoolSize = 0;
+
+	/**
+	 * Filled grids to start generating puzzles from, created when first
+	 * needed. Empty spots are filled by solving an empty grid.
+	 */
+	private int[][] solutionPool = null;
+
+	/**
+	 * The number of puzzles generated from each grid in the pool.
+	 */
+	private int[] solutionPoolDraws = null;
+
+	/**
+	 * Scratch arrays for rearranging a filled grid: the new label for each
+	 * digit, the old row for each new row, the old column for each new
+	 * column, and orders of three bands (or stacks) and three lines within
+	 * one.
+	 */
+	private final int[] transformDigits = fillIncrementing(new int[ROW_COL_SEC_SIZE]);
+
+	private final int[] transformRows = new int[ROW_COL_SEC_SIZE];
+
+	private final int[] transformColumns = new int[ROW_COL_SEC_SIZE];
+
+	private final int[] transformBands = fillIncrementing(new int[GRID_SIZE]);
+
+	private final int[] transformBandLines = fillIncrementing(new int[GRID_SIZE]);
+
+	/**
+	 * The old cell for each new cell, and whether the grid is transposed,
+	 * for the rearrangement picked last.
+	 */
+	private final int[] transformCells = new int[BOARD_SIZE];
+
+	private boolean transformTranspose = false;
+
+	/**
+	 * The strategies tried, in order, before guessing.
+	 */
+	private SolveTechnique[] solveStrategies = SolveTechnique.values();
+
+	/**
+	 * Whether to reorder the strategies based on how often they have made a
+	 * move for the time they take.
+	 */
+	private boolean adaptiveStrategyOrder = false;
+
+	/**
+	 * The time spent in each of the strategies (in the same order) while
+	 * adaptive ordering is on.
+	 */
+	private long[] strategyNanos = new long[solveStrategies.length];
+
+	/**
+	 * The number of moves made by each of the strategies (in the same order)
+	 * while adaptive ordering is on.
+	 */
+	private int[] strategyMoves = new int[solveStrategies.length];
+
+	/**
+	 * The hardest difficulty of strategy that may be used, and whether guesses
+	 * may be made, while solving. These are limited while rating a puzzle for
+	 * generatePuzzle(Symmetry, Difficulty), so that the rating gives up as
+	 * soon as the puzzle turns out to be harder than wanted.
+	 */
+	private Difficulty strategyLimit = Difficulty.EXPERT;
+
+	private boolean guessingAllowed = true;
+
+	/**
+	 * Whether singles and hidden singles are found by following each change
+	 * through the queues below rather than by scanning the whole board after
+	 * every move.
+	 */
+	private boolean propagateSingles = false;
+
+	/**
+	 * Scratch space for the nine masks of a unit being searched for a naked
+	 * or hidden subset.
+	 */
+	private int[] subsetMasks = new int[ROW_COL_SEC_SIZE];
+
+	/**
+	 * Cells that have been left with a single possibility, in the order that
+	 * it happened. Possibilities are only ever removed between rollbacks, so
+	 * each cell is queued at most once and the queue never wraps.
+	 */
+	private int[] singleQueue = new int[BOARD_SIZE];
+
+	private int singleQueueHead = 0;
+
+	private int singleQueueTail = 0;
+
+	/**
+	 * Units (as numbered in UNIT_CELLS) that have lost a possibility since
+	 * they were last checked for hidden singles, in the order that it happened.
+	 * A circular queue with no unit in it twice.
+	 */
+	private int[] unitQueue = new int[UNIT_COUNT];
+
+	private int unitQueueHead = 0;
+
+	private int unitQueueSize = 0;
+
+	/**
+	 * Bit set of the units that are currently in the unit queue.
+	 */
+	private int queuedUnits = 0;
+
+	/**
+	 * The source of randomness for generating puzzles and for the order in
+	 * which the solver tries cells and values. Each instance has its own so
+	 * that generator threads don't contend for it.
+	 */
+	private SplittableRandom random;
+
 	/**
 	 * Create a new Sudoku board
 	 */
 	public QQWing() {
+		this(new SplittableRandom());
+	}
+
+	/**
+	 * Create an instance whose random choices are reproducible from the given
+	 * seed.
+	 */
+	public QQWing(long seed) {
+		this(new SplittableRandom(seed));
+	}
+
+	/**
+	 * Create an instance that makes its random choices from the given
+	 * generator. For several reproducible instances, split each of them off
+	 * one seeded root generator.
+	 */
+	public QQWing(SplittableRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * Start the random choices over from the given seed. Everything the
+	 * instance does from then on depends only on the seed and on the solution
+	 * pool, not on the puzzles it made or solved before.
+	 */
+	public void setSeed(long seed) {
+		random = new SplittableRandom(seed);
+		fillIncrementing(randomBoardArray);
+		fillIncrementing(randomPossibilityArray);
+		fillIncrementing(transformDigits);
+		fillIncrementing(transformBands);
+		fillIncrementing(transformBandLines);
 	}
 
 	private static int[] fillIncrementing(int[] arr){
@@ -167,20 +598,37 @@ public class QQWing {
 	 */
 	private boolean reset() {
 		Arrays.fill(solution, 0);
-		Arrays.fill(solutionRound, 0);
-		Arrays.fill(possibilities, 0);
-		solveHistory.clear();
-		solveInstructions.clear();
+		trailSize = 0;
+		unsolvedCount = BOARD_SIZE;
+		emptyCellCount = 0;
+		Arrays.fill(candidates, ALL_POSSIBILITIES);
+		Arrays.fill(rowPlaced, 0);
+		Arrays.fill(columnPlaced, 0);
+		Arrays.fill(sectionPlaced, 0);
+		Arrays.fill(valuePositions, ALL_POSSIBILITIES);
+		Arrays.fill(valuePositionCounts, ROW_COL_SEC_SIZE);
+		Arrays.fill(hiddenSingleValues, 0);
+		unitsWithHiddenSingles = 0;
+		fillPossibilityCountBuckets();
+		clearPropagationQueues();
+		solveHistorySize = 0;
+		solveInstructionsSize = 0;
+		Arrays.fill(instructionCounts, 0);
+		backtrackCount = 0;
 
 		int round = 1;
 		for (int position = 0; position < BOARD_SIZE; position++) {
 			if (puzzle[position] > 0) {
-				int valIndex = puzzle[position] - 1;
-				int valPos = getPossibilityIndex(valIndex, position);
 				int value = puzzle[position];
-				if (possibilities[valPos] != 0) return false;
+				int valueBit = 1 << (value - 1);
+				if (((rowPlaced[cellToRow(position)] | columnPlaced[cellToColumn(position)] | sectionPlaced[cellToSection(position)]) & valueBit) != 0) return false;
 				mark(position, round, value);
-				if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.GIVEN, value, position));
+				addHistoryItem(round, LogType.GIVEN, value, position);
+			}
+		}
+		if (propagateSingles) {
+			for (int unit = 0; unit < UNIT_COUNT; unit++) {
+				queueUnit(unit);
 			}
 		}
 
@@ -191,260 +639,1012 @@ public class QQWing {
 	 * Get the difficulty rating.
 	 *
 	 * This method will return Difficulty.UNKNOWN unless
-	 * a puzzle has been generated or set and then the following methods called:
-	 * setRecordHistory(true), and solve()
+	 * a puzzle has been generated or set and then solve() called. History
+	 * doesn't need to be recorded.
 	 */
 	public Difficulty getDifficulty() {
 		if (getGuessCount() > 0) return Difficulty.EXPERT;
+		if (getXWingCount() > 0) return Difficulty.HARD;
+		if (getSwordfishCount() > 0) return Difficulty.HARD;
+		if (getXYWingCount() > 0) return Difficulty.HARD;
 		if (getBoxLineReductionCount() > 0) return Difficulty.INTERMEDIATE;
 		if (getPointingPairTripleCount() > 0) return Difficulty.INTERMEDIATE;
 		if (getHiddenPairCount() > 0) return Difficulty.INTERMEDIATE;
 		if (getNakedPairCount() > 0) return Difficulty.INTERMEDIATE;
+		if (getNakedTripleCount() > 0) return Difficulty.INTERMEDIATE;
+		if (getHiddenTripleCount() > 0) return Difficulty.INTERMEDIATE;
+		if (getNakedQuadCount() > 0) return Difficulty.INTERMEDIATE;
+		if (getHiddenQuadCount() > 0) return Difficulty.INTERMEDIATE;
 		if (getHiddenSingleCount() > 0) return Difficulty.EASY;
 		if (getSingleCount() > 0) return Difficulty.SIMPLE;
 		return Difficulty.UNKNOWN;
 	}
 
 	/**
-	 * Get the difficulty rating.
-	 *
-	 * This method will return "Unknown" unless
-	 * a puzzle has been generated or set and then the following methods called:
-	 * setRecordHistory(true), and solve()
+	 * Get the difficulty rating.
+	 *
+	 * This method will return "Unknown" unless
+	 * a puzzle has been generated or set and then solve() called. History
+	 * doesn't need to be recorded.
+	 */
+	public String getDifficultyAsString() {
+		return getDifficulty().getName();
+	}
+
+	/**
+	 * Get the number of cells for which the solution was determined because
+	 * there was only one possible value for that cell.
+	 */
+	public int getSingleCount() {
+		return getInstructionCount(LogType.SINGLE);
+	}
+
+	/**
+	 * Get the number of cells for which the solution was determined because
+	 * that cell had the only possibility for some value in the row, column, or
+	 * section.
+	 */
+	public int getHiddenSingleCount() {
+		return (getInstructionCount(LogType.HIDDEN_SINGLE_ROW) +
+			getInstructionCount(LogType.HIDDEN_SINGLE_COLUMN) + getInstructionCount(LogType.HIDDEN_SINGLE_SECTION));
+	}
+
+	/**
+	 * Get the number of naked pair reductions that were performed in solving
+	 * this puzzle.
+	 */
+	public int getNakedPairCount() {
+		return (getInstructionCount(LogType.NAKED_PAIR_ROW) +
+			getInstructionCount(LogType.NAKED_PAIR_COLUMN) + getInstructionCount(LogType.NAKED_PAIR_SECTION));
+	}
+
+	/**
+	 * Get the number of hidden pair reductions that were performed in solving
+	 * this puzzle.
+	 */
+	public int getHiddenPairCount() {
+		return (getInstructionCount(LogType.HIDDEN_PAIR_ROW) +
+			getInstructionCount(LogType.HIDDEN_PAIR_COLUMN) + getInstructionCount(LogType.HIDDEN_PAIR_SECTION));
+	}
+
+	/**
+	 * Get the number of naked triple reductions that were performed in solving
+	 * this puzzle.
+	 */
+	public int getNakedTripleCount() {
+		return (getInstructionCount(LogType.NAKED_TRIPLE_ROW) +
+			getInstructionCount(LogType.NAKED_TRIPLE_COLUMN) + getInstructionCount(LogType.NAKED_TRIPLE_SECTION));
+	}
+
+	/**
+	 * Get the number of hidden triple reductions that were performed in
+	 * solving this puzzle.
+	 */
+	public int getHiddenTripleCount() {
+		return (getInstructionCount(LogType.HIDDEN_TRIPLE_ROW) +
+			getInstructionCount(LogType.HIDDEN_TRIPLE_COLUMN) + getInstructionCount(LogType.HIDDEN_TRIPLE_SECTION));
+	}
+
+	/**
+	 * Get the number of naked quad reductions that were performed in solving
+	 * this puzzle.
+	 */
+	public int getNakedQuadCount() {
+		return (getInstructionCount(LogType.NAKED_QUAD_ROW) +
+			getInstructionCount(LogType.NAKED_QUAD_COLUMN) + getInstructionCount(LogType.NAKED_QUAD_SECTION));
+	}
+
+	/**
+	 * Get the number of hidden quad reductions that were performed in solving
+	 * this puzzle.
+	 */
+	public int getHiddenQuadCount() {
+		return (getInstructionCount(LogType.HIDDEN_QUAD_ROW) +
+			getInstructionCount(LogType.HIDDEN_QUAD_COLUMN) + getInstructionCount(LogType.HIDDEN_QUAD_SECTION));
+	}
+
+	/**
+	 * Get the number of X-Wing reductions that were performed in solving this
+	 * puzzle.
+	 */
+	public int getXWingCount() {
+		return (getInstructionCount(LogType.X_WING_ROW) + getInstructionCount(LogType.X_WING_COLUMN));
+	}
+
+	/**
+	 * Get the number of Swordfish reductions that were performed in solving
+	 * this puzzle.
+	 */
+	public int getSwordfishCount() {
+		return (getInstructionCount(LogType.SWORDFISH_ROW) + getInstructionCount(LogType.SWORDFISH_COLUMN));
+	}
+
+	/**
+	 * Get the number of XY-Wing reductions that were performed in solving
+	 * this puzzle.
+	 */
+	public int getXYWingCount() {
+		return getInstructionCount(LogType.XY_WING);
+	}
+
+	/**
+	 * Get the number of pointing pair/triple reductions that were performed in
+	 * solving this puzzle.
+	 */
+	public int getPointingPairTripleCount() {
+		return (getInstructionCount(LogType.POINTING_PAIR_TRIPLE_ROW) + getInstructionCount(LogType.POINTING_PAIR_TRIPLE_COLUMN));
+	}
+
+	/**
+	 * Get the number of box/line reductions that were performed in solving this
+	 * puzzle.
+	 */
+	public int getBoxLineReductionCount() {
+		return (getInstructionCount(LogType.ROW_BOX) + getInstructionCount(LogType.COLUMN_BOX));
+	}
+
+	/**
+	 * Get the number lucky guesses in solving this puzzle.
+	 */
+	public int getGuessCount() {
+		return getInstructionCount(LogType.GUESS);
+	}
+
+	/**
+	 * Get the number of backtracks (unlucky guesses) required when solving this
+	 * puzzle.
+	 */
+	public int getBacktrackCount() {
+		return backtrackCount;
+	}
+
+	private void shuffleRandomArrays() {
+		shuffleArray(randomBoardArray, BOARD_SIZE);
+		shuffleArray(randomPossibilityArray, ROW_COL_SEC_SIZE);
+		fillPossibilityCountBuckets();
+	}
+
+	/**
+	 * Rebuild the groups of cells by possibility count from scratch. Needed
+	 * when the random order of the cells changes.
+	 */
+	private void fillPossibilityCountBuckets() {
+		Arrays.fill(possibilityCountBuckets, 0);
+		for (int i = 0; i < BOARD_SIZE; i++) {
+			randomBoardRank[randomBoardArray[i]] = i;
+		}
+		for (int position = 0; position < BOARD_SIZE; position++) {
+			if (solution[position] == 0) toggleInBucket(position, countPossibilities(position));
+		}
+	}
+
+	/**
+	 * Add the cell to the group for the given possibility count, or remove it
+	 * if it is already there.
+	 */
+	private void toggleInBucket(int position, int count) {
+		int rank = randomBoardRank[position];
+		possibilityCountBuckets[count * 2 + (rank >>> 6)] ^= 1L << rank;
+	}
+
+	private void clearPuzzle() {
+		// Clear any existing puzzle
+		for (int i = 0; i < BOARD_SIZE; i++) {
+			puzzle[i] = 0;
+		}
+		reset();
+	}
+
+	/**
+	 * Generate a puzzle with the given symmetry, and check that it has the
+	 * given difficulty (any difficulty for Difficulty.UNKNOWN). The board is
+	 * left holding just the puzzle, ready for solve().
+	 *
+	 * @return true if a puzzle with the given difficulty was generated
+	 */
+	public boolean generatePuzzle(Symmetry symmetry, Difficulty difficulty) {
+		if (difficulty == Difficulty.UNKNOWN) return generatePuzzleSymmetry(symmetry);
+		return generateRatedPuzzle(symmetry, difficulty) == difficulty;
+	}
+
+	/**
+	 * Generate a puzzle with the given symmetry and rate it. Rather than
+	 * solving the puzzle to rate it, this only tries the strategies up to the
+	 * hardest difficulty of interest, and stops at the first move that would
+	 * need a harder one. Expert puzzles are the ones that need a guess, so
+	 * when expert is of interest it stops at the first guess rather than
+	 * guessing. Either way, the board is left holding just the puzzle, ready
+	 * for solve().
+	 *
+	 * @param hardest The hardest difficulty that is of interest
+	 * @return The difficulty of the puzzle, or Difficulty.UNKNOWN if it is
+	 *         harder than the given difficulty or could not be generated
+	 */
+	public Difficulty generateRatedPuzzle(Symmetry symmetry, Difficulty hardest) {
+		if (!generatePuzzleSymmetry(symmetry)) return Difficulty.UNKNOWN;
+		if (hardest == Difficulty.UNKNOWN) return Difficulty.UNKNOWN;
+
+		// Don't record history while rating.
+		boolean recHistory = recordHistory;
+		setRecordHistory(false);
+		boolean lHistory = logHistory;
+		setLogHistory(false);
+		strategyLimit = hardest;
+		guessingAllowed = false;
+
+		Difficulty rating;
+		if (solve()) {
+			rating = getDifficulty();
+		} else if (hardest == Difficulty.EXPERT && !isSearchStopped()) {
+			rating = Difficulty.EXPERT;
+		} else {
+			rating = Difficulty.UNKNOWN;
+		}
+
+		strategyLimit = Difficulty.EXPERT;
+		guessingAllowed = true;
+		reset();
+		setRecordHistory(recHistory);
+		setLogHistory(lHistory);
+
+		return rating;
+	}
+
+	public boolean generatePuzzle() {
+		return generatePuzzleSymmetry(Symmetry.NONE);
+	}
+
+	public boolean generatePuzzleSymmetry(Symmetry symmetry) {
+
+		if (symmetry == Symmetry.RANDOM) symmetry = getRandomSymmetry();
+
+		// Don't record history while generating.
+		boolean recHistory = recordHistory;
+		setRecordHistory(false);
+		boolean lHistory = logHistory;
+		setLogHistory(false);
+
+		boolean generated;
+		if (solutionPoolSize > 0) {
+			// Start from a filled grid drawn from the pool
+			generated = drawPooledSolution();
+			for (int i = 0; i < BOARD_SIZE; i++) {
+				puzzle[i] = generatedSolution[i];
+			}
+		} else {
+			generated = fillEmptyGrid();
+			for (int i = 0; i < BOARD_SIZE; i++) {
+				generatedSolution[i] = solution[i];
+			}
+
+			if (symmetry == Symmetry.NONE) {
+				// Rollback any square for which it is obvious that
+				// the square doesn't contribute to a unique solution
+				// (ie, squares that were filled by logic rather
+				// than by guess)
+				rollbackNonGuesses();
+			}
+
+			// Record all marked squares as the puzzle so
+			// that we can call countSolutions without losing it.
+			for (int i = 0; i < BOARD_SIZE; i++) {
+				puzzle[i] = solution[i];
+			}
+		}
+
+		if (generated) generated = digHoles(symmetry);
+
+		// Restore recording history.
+		setRecordHistory(recHistory);
+		setLogHistory(lHistory);
+
+		return generated;
+	}
+
+	/**
+	 * Generate a puzzle with the given symmetry by removing clues from the
+	 * given filled grid of 81 values. The board is left holding just the
+	 * puzzle, ready for solve().
+	 *
+	 * @return false if the grid is not a complete and valid sudoku solution,
+	 *         or if generating was cancelled
+	 */
+	public boolean generatePuzzleFromSolution(int[] solutionGrid, Symmetry symmetry) {
+		if (!isValidSolution(solutionGrid)) return false;
+
+		if (symmetry == Symmetry.RANDOM) symmetry = getRandomSymmetry();
+
+		// Don't record history while generating.
+		boolean recHistory = recordHistory;
+		setRecordHistory(false);
+		boolean lHistory = logHistory;
+		setLogHistory(false);
+
+		for (int i = 0; i < BOARD_SIZE; i++) {
+			generatedSolution[i] = solutionGrid[i];
+			puzzle[i] = solutionGrid[i];
+		}
+		boolean generated = digHoles(symmetry);
+
+		// Restore recording history.
+		setRecordHistory(recHistory);
+		setLogHistory(lHistory);
+
+		return generated;
+	}
+
+	/**
+	 * Set how many filled grids to keep for generating puzzles. Each puzzle
+	 * starts from a random rearrangement of one of the grids in the pool
+	 * rather than from a newly solved empty grid, which is faster. Each grid
+	 * is replaced by a newly solved one after a few puzzles, but puzzles
+	 * from the same grid are rearrangements of the same solution. Zero (the
+	 * default) solves a new grid for every puzzle.
+	 */
+	public void setSolutionPoolSize(int size) {
+		if (size < 0) throw new IllegalArgumentException("Negative solution pool size: " + size);
+		solutionPoolSize = size;
+		solutionPool = null;
+		solutionPoolDraws = null;
+	}
+
+	/**
+	 * Fill every empty spot in the solution pool now rather than when it is
+	 * first drawn. Instances created with the same seed then have the same
+	 * pool, whatever they generate afterwards.
+	 */
+	public void fillSolutionPool() {
+		// Don't record history while filling.
+		boolean recHistory = recordHistory;
+		setRecordHistory(false);
+		boolean lHistory = logHistory;
+		setLogHistory(false);
+
+		if (solutionPool == null) createSolutionPool();
+		for (int slot = 0; slot < solutionPoolSize; slot++) {
+			if (solutionPool[slot] == null) {
+				// Stop early if cancelled or out of budget
+				if (!fillEmptyGrid()) break;
+				solutionPool[slot] = solution.clone();
+				solutionPoolDraws[slot] = 0;
+			}
+		}
+		reset();
+
+		// Restore recording history.
+		setRecordHistory(recHistory);
+		setLogHistory(lHistory);
+	}
+
+	/**
+	 * Fill the board by solving an empty grid. The solve uses random
+	 * algorithms, so the result is a really random totally filled sudoku.
+	 *
+	 * @return false if solving was cancelled
+	 */
+	private boolean fillEmptyGrid() {
+		clearPuzzle();
+
+		// Start by getting the randomness in order so that
+		// each puzzle will be different from the last.
+		shuffleRandomArrays();
+
+		return solve();
+	}
+
+	/**
+	 * Put a random rearrangement of a random grid from the pool into the
+	 * generated solution, first filling that spot in the pool if it is
+	 * empty or its grid has been used enough.
+	 *
+	 * @return false if filling the spot in the pool was cancelled
+	 */
+	private boolean drawPooledSolution() {
+		if (solutionPool == null) createSolutionPool();
+		int slot = random.nextInt(solutionPoolSize);
+		if (solutionPool[slot] == null || solutionPoolDraws[slot] >= SOLUTION_POOL_DRAWS) {
+			if (!fillEmptyGrid()) return false;
+			solutionPool[slot] = solution.clone();
+			solutionPoolDraws[slot] = 0;
+		}
+		solutionPoolDraws[slot]++;
+		transformSolution(solutionPool[slot], generatedSolution);
+		return true;
+	}
+
+	private void createSolutionPool() {
+		solutionPool = new int[solutionPoolSize][];
+		solutionPoolDraws = new int[solutionPoolSize];
+	}
+
+	/**
+	 * Copy a filled grid into dest with a random one of the changes that
+	 * keep it a valid sudoku: the digits relabeled, the bands and stacks
+	 * reordered, the rows within each band and the columns within each
+	 * stack reordered, and possibly transposed.
+	 */
+	private void transformSolution(int[] src, int[] dest) {
+		pickTransform();
+		applyTransform(src, dest);
+	}
+
+	/**
+	 * Rearrange the puzzle and its solution into a random isomorph: the
+	 * digits relabeled, the bands and stacks reordered, the rows within each
+	 * band and the columns within each stack reordered, and possibly
+	 * transposed. The solve history is rearranged to match. The statistics
+	 * and difficulty from the last solve carry over without solving again,
+	 * since none of the solving techniques depend on how the grid is
+	 * arranged. Call solve() to start over on the rearranged puzzle.
+	 */
+	public void transformToRandomIsomorph() {
+		pickTransform();
+		applyTransform(puzzle.clone(), puzzle);
+		applyTransform(solution.clone(), solution);
+		int[] newCells = new int[BOARD_SIZE];
+		for (int cell = 0; cell < BOARD_SIZE; cell++) {
+			newCells[transformCells[cell]] = cell;
+		}
+		transformLog(solveHistory, solveHistorySize, newCells);
+		transformLog(solveInstructions, solveInstructionsSize, newCells);
+	}
+
+	/**
+	 * Pick a random rearrangement of the grid.
+	 */
+	private void pickTransform() {
+		shuffleArray(transformDigits, ROW_COL_SEC_SIZE);
+		shuffleLines(transformRows);
+		shuffleLines(transformColumns);
+		transformTranspose = random.nextBoolean();
+		for (int row = 0; row < ROW_COL_SEC_SIZE; row++) {
+			for (int col = 0; col < ROW_COL_SEC_SIZE; col++) {
+				transformCells[rowColumnToCell(row, col)] = transformTranspose ? rowColumnToCell(transformColumns[col], transformRows[row]) : rowColumnToCell(transformRows[row], transformColumns[col]);
+			}
+		}
+	}
+
+	/**
+	 * Copy the grid into dest with the rearrangement from pickTransform().
+	 * Zeros (unknown cells) stay zero.
+	 */
+	private void applyTransform(int[] src, int[] dest) {
+		for (int cell = 0; cell < BOARD_SIZE; cell++) {
+			int value = src[transformCells[cell]];
+			dest[cell] = (value == 0) ? 0 : transformDigits[value - 1] + 1;
+		}
+	}
+
+	/**
+	 * Rearrange the packed log items with the rearrangement from
+	 * pickTransform(), given the new cell for each old cell.
+	 */
+	private void transformLog(int[] log, int size, int[] newCells) {
+		for (int i = 0; i < size; i++) {
+			int item = log[i];
+			int typeOrdinal = getLogItemTypeOrdinal(item);
+			LogType type = transformTranspose ? TRANSPOSED_LOG_TYPES[typeOrdinal] : LOG_TYPES[typeOrdinal];
+			int value = (item >>> 7) & 0xf;
+			if (value != 0) value = transformDigits[value - 1] + 1;
+			int position = (item & 0x7f) - 1;
+			if (position >= 0) position = newCells[position];
+			log[i] = packLogItem(getLogItemRound(item), type, value, position);
+		}
+	}
+
+	/**
+	 * Fill the array with a random order of the rows (or columns) that keeps
+	 * each band (or stack) together.
+	 */
+	private void shuffleLines(int[] lines) {
+		shuffleArray(transformBands, GRID_SIZE);
+		for (int band = 0; band < GRID_SIZE; band++) {
+			shuffleArray(transformBandLines, GRID_SIZE);
+			for (int i = 0; i < GRID_SIZE; i++) {
+				lines[band * GRID_SIZE + i] = transformBands[band] * GRID_SIZE + transformBandLines[i];
+			}
+		}
+	}
+
+	/**
+	 * Whether the array holds 81 values that are a complete and valid sudoku
+	 * solution.
+	 */
+	private static boolean isValidSolution(int[] grid) {
+		if (grid == null || grid.length != BOARD_SIZE) return false;
+		int[] used = new int[UNIT_COUNT];
+		for (int cell = 0; cell < BOARD_SIZE; cell++) {
+			int value = grid[cell];
+			if (value < 1 || value > ROW_COL_SEC_SIZE) return false;
+			int bit = 1 << (value - 1);
+			int row = cellToRow(cell);
+			int col = ROW_COL_SEC_SIZE + cellToColumn(cell);
+			int sec = 2 * ROW_COL_SEC_SIZE + cellToSection(cell);
+			if (((used[row] | used[col] | used[sec]) & bit) != 0) return false;
+			used[row] |= bit;
+			used[col] |= bit;
+			used[sec] |= bit;
+		}
+		return true;
+	}
+
+	/**
+	 * Remove clues from the puzzle one at a time (with their symmetric
+	 * partners), leaving out each one that isn't needed for the solution in
+	 * generatedSolution to be unique. Leaves the board holding just the
+	 * puzzle.
+	 *
+	 * @return false if cancelled before all the clues were tried
+	 */
+	private boolean digHoles(Symmetry symmetry) {
+		// Randomize everything so that we test squares
+		// in a different order than they were added.
+		shuffleRandomArrays();
+
+		if (exactCoverCounting && generatorPool != null) {
+			digHolesInParallel(symmetry);
+			reset();
+			return !isCancelled();
+		}
+
+		if (exactCoverCounting) {
+			if (holeDigger == null) holeDigger = new HoleDigger();
+			holeDigger.setCancelFlag(cancelFlag);
+			holeDigger.setBudget(searchBudget, searchTimeLimit);
+			holeDigger.start(puzzle, generatedSolution);
+		}
+
+		// Whether any check ran out of budget
+		boolean exhausted = false;
+
+		// Remove one value at a time and see if
+		// the puzzle still has only one solution.
+		// If it does, leave it out the point because
+		// it is not needed.
+		for (int i = 0; i < BOARD_SIZE && !isCancelled(); i++) {
+			// check all the positions, but in shuffled order
+			int position = randomBoardArray[i];
+			if (puzzle[position] > 0) {
+				// try backing out the value and
+				// checking that the solution is still unique
+				int removedCount = getSymmetricClues(symmetry, position, removedClues);
+				for (int j = 0; j < removedCount; j++) {
+					puzzle[removedClues[j]] = 0;
+				}
+				boolean needed;
+				if (exactCoverCounting) {
+					// The digger keeps the clue if it ran out of budget
+					needed = !holeDigger.tryRemove(removedClues, removedCount);
+					exhausted |= holeDigger.isBudgetExhausted();
+				} else {
+					// Keep the clue if the count ran out of budget
+					needed = countSolutionsToLimit(2) > 1 || isSearchStopped();
+					exhausted |= budgetExhausted;
+				}
+				if (needed) {
+					// Put it back in, it is needed
+					for (int j = 0; j < removedCount; j++) {
+						puzzle[removedClues[j]] = generatedSolution[removedClues[j]];
+					}
+				}
+			}
+		}
+
+		budgetExhausted = exhausted;
+
+		// Clear all solution info, leaving just the puzzle.
+		reset();
+		return !isCancelled();
+	}
+
+	/**
+	 * Remove the same clues as digHoles() would, checking several removals
+	 * at once on the threads of the generator pool. Each removal in a batch
+	 * is checked on its own against the current puzzle, then the results
+	 * are applied in order. Removals that fail before the first one that
+	 * succeeds are final, as are those that fail after it: a clue that is
+	 * needed stays needed when other clues are removed. The first one that
+	 * succeeds is made, and the rest that succeeded are checked again in
+	 * the next batch without it. That gives the same puzzle as checking
+	 * one removal at a time, however many threads there are.
+	 */
+	private void digHolesInParallel(Symmetry symmetry) {
+		// The groups of clues to remove together, in the order that
+		// they would be tried one at a time
+		int[][] groups = new int[BOARD_SIZE][];
+		int[] groupSizes = new int[BOARD_SIZE];
+		int groupCount = 0;
+		boolean[] grouped = new boolean[BOARD_SIZE];
+		for (int i = 0; i < BOARD_SIZE; i++) {
+			int position = randomBoardArray[i];
+			if (puzzle[position] > 0 && !grouped[position]) {
+				int[] group = new int[removedClues.length];
+				int size = getSymmetricClues(symmetry, position, group);
+				for (int j = 0; j < size; j++) {
+					grouped[group[j]] = true;
+				}
+				groups[groupCount] = group;
+				groupSizes[groupCount] = size;
+				groupCount++;
+			}
+		}
+
+		int batchSize = generatorPool.getParallelism();
+		boolean[] removable = new boolean[batchSize];
+		int[] recheck = new int[batchSize];
+		int next = 0;
+		boolean exhausted = false;
+		while (next < groupCount && !isCancelled()) {
+			int count = Math.min(batchSize, groupCount - next);
+			exhausted |= HoleDigger.checkRemovals(puzzle, generatedSolution, groups, groupSizes, next, count, removable, generatorPool, cancelFlag, searchBudget, searchTimeLimit);
+			boolean removed = false;
+			int recheckCount = 0;
+			for (int i = 0; i < count; i++) {
+				if (!removable[i]) continue;
+				int group = next + i;
+				if (!removed) {
+					for (int j = 0; j < groupSizes[group]; j++) {
+						puzzle[groups[group][j]] = 0;
+					}
+					removed = true;
+				} else {
+					recheck[recheckCount++] = group;
+				}
+			}
+			// Move the groups to check again to the end of this batch, so
+			// that the next batch starts with them. Going backwards, no group
+			// is moved out of the way before its own turn.
+			next += count - recheckCount;
+			for (int i = recheckCount - 1; i >= 0; i--) {
+				int group = recheck[i];
+				int[] cells = groups[group];
+				int size = groupSizes[group];
+				groups[group] = groups[next + i];
+				groupSizes[group] = groupSizes[next + i];
+				groups[next + i] = cells;
+				groupSizes[next + i] = size;
+			}
+		}
+		budgetExhausted = exhausted;
+	}
+
+	/**
+	 * Fill cells with the given clue followed by its symmetric partners that
+	 * are still given, each one once.
+	 *
+	 * @return The number of cells filled in, one to four
+	 */
+	private int getSymmetricClues(Symmetry symmetry, int position, int[] cells) {
+		int positionsym1 = -1;
+		int positionsym2 = -1;
+		int positionsym3 = -1;
+		switch (symmetry) {
+			case ROTATE90:
+				positionsym2 = rowColumnToCell(ROW_COL_SEC_SIZE - 1 - cellToColumn(position), cellToRow(position));
+				positionsym3 = rowColumnToCell(cellToColumn(position), ROW_COL_SEC_SIZE - 1 - cellToRow(position));
+			case ROTATE180:
+				positionsym1 = rowColumnToCell(ROW_COL_SEC_SIZE - 1 - cellToRow(position), ROW_COL_SEC_SIZE - 1 - cellToColumn(position));
+			break;
+			case MIRROR:
+				positionsym1 = rowColumnToCell(cellToRow(position), ROW_COL_SEC_SIZE - 1 - cellToColumn(position));
+			break;
+			case FLIP:
+				positionsym1 = rowColumnToCell(ROW_COL_SEC_SIZE - 1 - cellToRow(position), cellToColumn(position));
+			break;
+			default:
+			break;
+		}
+		int count = 0;
+		cells[count++] = position;
+		count = addSymmetricClue(positionsym1, cells, count);
+		count = addSymmetricClue(positionsym2, cells, count);
+		count = addSymmetricClue(positionsym3, cells, count);
+		return count;
+	}
+
+	private int addSymmetricClue(int position, int[] cells, int count) {
+		if (position < 0 || puzzle[position] == 0) return count;
+		for (int i = 0; i < count; i++) {
+			if (cells[i] == position) return count;
+		}
+		cells[count] = position;
+		return count + 1;
+	}
+
+	private void rollbackNonGuesses() {
+		// Guesses are odd rounds
+		// Non-guesses are even rounds
+		// The non-guess rounds are interleaved with the guesses on the trail,
+		// so filter the whole trail rather than popping rounds off the top.
+		// Undo from the end, the same order as rolling back round by round.
+		for (int i = trailSize - 1; i >= 0; i--) {
+			if (isNonGuessTrailEntry(trail[i])) undoTrailEntry(trail[i]);
+		}
+		int kept = 0;
+		for (int i = 0; i < trailSize; i++) {
+			if (!isNonGuessTrailEntry(trail[i])) trail[kept++] = trail[i];
+		}
+		trailSize = kept;
+		clearPropagationQueues();
+		for (int i = 2; i <= lastSolveRound; i += 2) {
+			addHistoryItem(i, LogType.ROLLBACK, 0, -1);
+			removeInstructions(i);
+		}
+	}
+
+	public void setPrintStyle(PrintStyle ps) {
+		printStyle = ps;
+	}
+
+	public void setRecordHistory(boolean recHistory) {
+		recordHistory = recHistory;
+	}
+
+	public void setLogHistory(boolean logHist) {
+		logHistory = logHist;
+	}
+
+	/**
+	 * Set a pool of threads to generate each puzzle with, or null (the
+	 * default) to generate on the calling thread. Several clue removals are
+	 * checked at once, so that one puzzle is generated sooner. The puzzles
+	 * are the same as when generating on one thread. Only used with exact
+	 * cover counting.
 	 */
-	public String getDifficultyAsString() {
-		return getDifficulty().getName();
+	public void setGeneratorPool(ForkJoinPool pool) {
+		generatorPool = pool;
 	}
 
 	/**
-	 * Get the number of cells for which the solution was determined because
-	 * there was only one possible value for that cell.
+	 * Set a flag that cancels solving, counting solutions, and generating
+	 * once it is set, or null (the default) for none. Another thread can set
+	 * it to stop work in progress. A cancelled solve() returns false and
+	 * leaves the board partly solved, a cancelled count returns the
+	 * solutions found so far, and a cancelled generate returns false.
 	 */
-	public int getSingleCount() {
-		return getLogCount(solveInstructions, LogType.SINGLE);
+	public void setCancelFlag(AtomicBoolean flag) {
+		cancelFlag = flag;
+	}
+
+	private boolean isCancelled() {
+		return cancelFlag != null && cancelFlag.get();
 	}
 
 	/**
-	 * Get the number of cells for which the solution was determined because
-	 * that cell had the only possibility for some value in the row, column, or
-	 * section.
+	 * Limit how much searching each call to solve() or to one of the
+	 * countSolutions() methods may do, including those made while
+	 * generating. The budget is the number of guesses (or, for the exact
+	 * cover count, of rows tried), and the threads of a parallel count
+	 * share one budget between them. A call that runs out stops
+	 * the same way as a cancelled one, and isBudgetExhausted() tells the
+	 * two apart from a puzzle with no solution.
+	 *
+	 * @param nodes The most guesses per call, or zero for no limit
+	 * @param milliseconds The most time per call, or zero for no limit
 	 */
-	public int getHiddenSingleCount() {
-		return (getLogCount(solveInstructions, LogType.HIDDEN_SINGLE_ROW) +
-			getLogCount(solveInstructions, LogType.HIDDEN_SINGLE_COLUMN) + getLogCount(solveInstructions, LogType.HIDDEN_SINGLE_SECTION));
+	public void setSearchBudget(long nodes, long milliseconds) {
+		if (nodes < 0 || milliseconds < 0) throw new IllegalArgumentException("Negative search budget: " + nodes + " nodes, " + milliseconds + "ms");
+		searchBudget = nodes;
+		searchTimeLimit = milliseconds * 1000000L;
 	}
 
 	/**
-	 * Get the number of naked pair reductions that were performed in solving
-	 * this puzzle.
+	 * Whether the last solve or count stopped because it ran out of its
+	 * search budget or time. The rest of its statistics are as far as it
+	 * got.
 	 */
-	public int getNakedPairCount() {
-		return (getLogCount(solveInstructions, LogType.NAKED_PAIR_ROW) +
-			getLogCount(solveInstructions, LogType.NAKED_PAIR_COLUMN) + getLogCount(solveInstructions, LogType.NAKED_PAIR_SECTION));
+	public boolean isBudgetExhausted() {
+		return budgetExhausted;
 	}
 
 	/**
-	 * Get the number of hidden pair reductions that were performed in solving
-	 * this puzzle.
+	 * Get the number of guesses, lucky or not, made by the last solve or
+	 * count (or, for the exact cover count, the number of rows tried).
 	 */
-	public int getHiddenPairCount() {
-		return (getLogCount(solveInstructions, LogType.HIDDEN_PAIR_ROW) +
-			getLogCount(solveInstructions, LogType.HIDDEN_PAIR_COLUMN) + getLogCount(solveInstructions, LogType.HIDDEN_PAIR_SECTION));
+	public long getSearchNodeCount() {
+		return searchNodeCount;
 	}
 
 	/**
-	 * Get the number of pointing pair/triple reductions that were performed in
-	 * solving this puzzle.
+	 * Get the deepest level of nested guesses reached by the last solve or
+	 * count.
 	 */
-	public int getPointingPairTripleCount() {
-		return (getLogCount(solveInstructions, LogType.POINTING_PAIR_TRIPLE_ROW) + getLogCount(solveInstructions, LogType.POINTING_PAIR_TRIPLE_COLUMN));
+	public int getSearchDepth() {
+		return searchDepth;
 	}
 
 	/**
-	 * Get the number of box/line reductions that were performed in solving this
-	 * puzzle.
+	 * Set how often solve() gives up on a search that is backtracking a lot
+	 * and starts over with a new random branching order. Most puzzles are
+	 * solved before the first restart, but restarting cuts short the rare
+	 * orders that lead to huge searches.
+	 *
+	 * @param backtracks The backtracks allowed before the first restart
 	 */
-	public int getBoxLineReductionCount() {
-		return (getLogCount(solveInstructions, LogType.ROW_BOX) + getLogCount(solveInstructions, LogType.COLUMN_BOX));
+	public void setRestartStrategy(RestartStrategy strategy, int backtracks) {
+		if (backtracks <= 0) throw new IllegalArgumentException("Restart backtracks must be positive: " + backtracks);
+		restartStrategy = strategy;
+		restartBacktracks = backtracks;
 	}
 
 	/**
-	 * Get the number lucky guesses in solving this puzzle.
+	 * Set how often solve() restarts, allowing DEFAULT_RESTART_BACKTRACKS
+	 * backtracks before the first restart.
 	 */
-	public int getGuessCount() {
-		return getLogCount(solveInstructions, LogType.GUESS);
+	public void setRestartStrategy(RestartStrategy strategy) {
+		setRestartStrategy(strategy, DEFAULT_RESTART_BACKTRACKS);
 	}
 
 	/**
-	 * Get the number of backtracks (unlucky guesses) required when solving this
-	 * puzzle.
+	 * Get the number of times the last solve started over with a new
+	 * branching order. The rest of the statistics are for the last attempt.
 	 */
-	public int getBacktrackCount() {
-		return getLogCount(solveHistory, LogType.ROLLBACK);
+	public int getRestartCount() {
+		return restartCount;
 	}
 
-	private void shuffleRandomArrays() {
-		shuffleArray(randomBoardArray, BOARD_SIZE);
-		shuffleArray(randomPossibilityArray, ROW_COL_SEC_SIZE);
+	/**
+	 * The backtracks allowed before the given restart (0 for the first
+	 * attempt), or zero for no limit.
+	 */
+	private long getRestartLimit(int restart) {
+		switch (restartStrategy) {
+			case LUBY:
+				return restartBacktracks * (long) luby(restart + 1);
+			case GEOMETRIC:
+				return (long) (restartBacktracks * Math.pow(1.5, Math.min(restart, 64)));
+			default:
+				return 0;
+		}
 	}
 
-	private void clearPuzzle() {
-		// Clear any existing puzzle
-		for (int i = 0; i < BOARD_SIZE; i++) {
-			puzzle[i] = 0;
+	/**
+	 * The ith (from 1) term of the Luby sequence: 1, 1, 2, 1, 1, 2, 4, 1, 1,
+	 * 2, 1, 1, 2, 4, 8, ...
+	 */
+	static int luby(int i) {
+		while (true) {
+			// Find the smallest k with 2^k - 1 >= i
+			int k = 1;
+			while ((1 << k) - 1 < i) k++;
+			if ((1 << k) - 1 == i) return 1 << (k - 1);
+			// Otherwise the sequence repeats from the start
+			i -= (1 << (k - 1)) - 1;
 		}
-		reset();
 	}
 
-	public boolean generatePuzzle() {
-		return generatePuzzleSymmetry(Symmetry.NONE);
+	/**
+	 * Start counting the search done by a solve or count against the
+	 * budget.
+	 */
+	private void startSearch() {
+		searchNodeCount = 0;
+		searchDepth = 0;
+		budgetExhausted = false;
+		if (searchTimeLimit > 0) searchDeadline = System.nanoTime() + searchTimeLimit;
 	}
 
-	public boolean generatePuzzleSymmetry(Symmetry symmetry) {
-
-		if (symmetry == Symmetry.RANDOM) symmetry = getRandomSymmetry();
-
-		// Don't record history while generating.
-		boolean recHistory = recordHistory;
-		setRecordHistory(false);
-		boolean lHistory = logHistory;
-		setLogHistory(false);
-
-		clearPuzzle();
-
-		// Start by getting the randomness in order so that
-		// each puzzle will be different from the last.
-		shuffleRandomArrays();
-
-		// Now solve the puzzle the whole way. The solve
-		// uses random algorithms, so we should have a
-		// really randomly totally filled sudoku
-		// Even when starting from an empty grid
-		solve();
-
-		if (symmetry == Symmetry.NONE) {
-			// Rollback any square for which it is obvious that
-			// the square doesn't contribute to a unique solution
-			// (ie, squares that were filled by logic rather
-			// than by guess)
-			rollbackNonGuesses();
-		}
-
-		// Record all marked squares as the puzzle so
-		// that we can call countSolutions without losing it.
-		for (int i = 0; i < BOARD_SIZE; i++) {
-			puzzle[i] = solution[i];
+	/**
+	 * Whether the search has been cancelled or has run out of budget or
+	 * time.
+	 */
+	private boolean isSearchStopped() {
+		if (budgetExhausted) return true;
+		if ((searchBudget > 0 && searchNodeCount >= searchBudget) || (searchTimeLimit > 0 && System.nanoTime() - searchDeadline >= 0)) {
+			budgetExhausted = true;
+			return true;
 		}
-
-		// Rerandomize everything so that we test squares
-		// in a different order than they were added.
-		shuffleRandomArrays();
-
-		// Remove one value at a time and see if
-		// the puzzle still has only one solution.
-		// If it does, leave it out the point because
-		// it is not needed.
-		for (int i = 0; i < BOARD_SIZE; i++) {
-			// check all the positions, but in shuffled order
-			int position = randomBoardArray[i];
-			if (puzzle[position] > 0) {
-				int positionsym1 = -1;
-				int positionsym2 = -1;
-				int positionsym3 = -1;
-				switch (symmetry) {
-					case ROTATE90:
-						positionsym2 = rowColumnToCell(ROW_COL_SEC_SIZE - 1 - cellToColumn(position), cellToRow(position));
-						positionsym3 = rowColumnToCell(cellToColumn(position), ROW_COL_SEC_SIZE - 1 - cellToRow(position));
-					case ROTATE180:
-						positionsym1 = rowColumnToCell(ROW_COL_SEC_SIZE - 1 - cellToRow(position), ROW_COL_SEC_SIZE - 1 - cellToColumn(position));
-					break;
-					case MIRROR:
-						positionsym1 = rowColumnToCell(cellToRow(position), ROW_COL_SEC_SIZE - 1 - cellToColumn(position));
-					break;
-					case FLIP:
-						positionsym1 = rowColumnToCell(ROW_COL_SEC_SIZE - 1 - cellToRow(position), cellToColumn(position));
-					break;
-					default:
-					break;
-				}
-				// try backing out the value and
-				// counting solutions to the puzzle
-				int savedValue = puzzle[position];
-				puzzle[position] = 0;
-				int savedSym1 = 0;
-				if (positionsym1 >= 0) {
-					savedSym1 = puzzle[positionsym1];
-					puzzle[positionsym1] = 0;
-				}
-				int savedSym2 = 0;
-				if (positionsym2 >= 0) {
-					savedSym2 = puzzle[positionsym2];
-					puzzle[positionsym2] = 0;
-				}
-				int savedSym3 = 0;
-				if (positionsym3 >= 0) {
-					savedSym3 = puzzle[positionsym3];
-					puzzle[positionsym3] = 0;
-				}
-				reset();
-				if (countSolutions(2, true) > 1) {
-					// Put it back in, it is needed
-					puzzle[position] = savedValue;
-					if (positionsym1 >= 0 && savedSym1 != 0) puzzle[positionsym1] = savedSym1;
-					if (positionsym2 >= 0 && savedSym2 != 0) puzzle[positionsym2] = savedSym2;
-					if (positionsym3 >= 0 && savedSym3 != 0) puzzle[positionsym3] = savedSym3;
-				}
-			}
+		if (isCancelled()) return true;
+		if (restartLimit > 0 && backtrackCount >= restartLimit) {
+			restartDue = true;
+			return true;
 		}
+		return false;
+	}
 
-		// Clear all solution info, leaving just the puzzle.
-		reset();
-
-		// Restore recording history.
-		setRecordHistory(recHistory);
-		setLogHistory(lHistory);
+	private void noteSearchDepth(int depth) {
+		if (depth > searchDepth) searchDepth = depth;
+	}
 
-		return true;
+	/**
+	 * Set whether solutions are counted (by countSolutions() and while
+	 * generating puzzles) with a dedicated exact cover search (the default)
+	 * or with the same solving techniques and guessing used by solve(). Both
+	 * give the same counts, the exact cover search is much faster.
+	 */
+	public void setExactCoverCounting(boolean exactCover) {
+		exactCoverCounting = exactCover;
 	}
 
-	private void rollbackNonGuesses() {
-		// Guesses are odd rounds
-		// Non-guesses are even rounds
-		for (int i = 2; i <= lastSolveRound; i += 2) {
-			rollbackRound(i);
-		}
+	/**
+	 * Set whether singles and hidden singles are found by propagating each
+	 * placement and elimination to just the cells and units it touches,
+	 * rather than by rescanning the board after every move (the default).
+	 * Propagating is much faster on puzzles that are mostly solved by
+	 * singles. The difficulty is the same either way, but the order of the
+	 * moves, and so the split between singles and hidden singles, can
+	 * differ. Takes effect the next time the puzzle is solved.
+	 */
+	public void setPropagateSingles(boolean propagate) {
+		propagateSingles = propagate;
 	}
 
-	public void setPrintStyle(PrintStyle ps) {
-		printStyle = ps;
+	/**
+	 * Set the strategies used to make progress before guessing, in the order
+	 * in which they are tried. The default is all of SolveTechnique, in
+	 * order. Leaving strategies out makes each move faster, but more puzzles
+	 * need guesses (and are rated expert). For example, just
+	 * SolveTechnique.SINGLE is a quick way to check puzzles for uniqueness
+	 * when exact cover counting is turned off.
+	 */
+	public void setSolveStrategies(List<SolveTechnique> strategies) {
+		solveStrategies = strategies.toArray(new SolveTechnique[strategies.size()]);
+		strategyNanos = new long[solveStrategies.length];
+		strategyMoves = new int[solveStrategies.length];
 	}
 
-	public void setRecordHistory(boolean recHistory) {
-		recordHistory = recHistory;
+	/**
+	 * Get the strategies used to make progress before guessing, in the order
+	 * in which they are currently tried.
+	 */
+	public List<SolveTechnique> getSolveStrategies() {
+		return Collections.unmodifiableList(Arrays.asList(solveStrategies.clone()));
 	}
 
-	public void setLogHistory(boolean logHist) {
-		logHistory = logHist;
+	/**
+	 * Set whether strategies are reordered before each solve, so that the
+	 * ones that make the most moves for the time they take are tried first.
+	 * Only strategies with the same difficulty are ever swapped, so puzzles
+	 * get the same difficulty rating, but which of those strategies gets
+	 * credit for a move (and the solve instructions) can change from one
+	 * solve to the next.
+	 */
+	public void setAdaptiveStrategyOrder(boolean adaptive) {
+		adaptiveStrategyOrder = adaptive;
 	}
 
-	private void addHistoryItem(LogItem l) {
+	private void addHistoryItem(int round, LogType type, int value, int position) {
 		if (logHistory) {
-			l.print();
+			new LogItem(round, type, value, position).print();
 			System.out.println();
 		}
+		int item = packLogItem(round, type, value, position);
 		if (recordHistory) {
-			solveHistory.add(l); // ->push_back(l);
-			solveInstructions.add(l); // ->push_back(l);
-		} else {
-			l = null;
+			if (solveHistorySize == solveHistory.length) solveHistory = Arrays.copyOf(solveHistory, solveHistorySize * 2);
+			solveHistory[solveHistorySize++] = item;
 		}
+		if (solveInstructionsSize == solveInstructions.length) solveInstructions = Arrays.copyOf(solveInstructions, solveInstructionsSize * 2);
+		solveInstructions[solveInstructionsSize++] = item;
+		instructionCounts[type.ordinal()]++;
+		if (type == LogType.ROLLBACK) backtrackCount++;
+	}
+
+	/**
+	 * Pack a log item into an int: the round in the high bits, then the
+	 * ordinal of the type (six bits), the value (four bits), and the position
+	 * plus one (seven bits, so that -1 for no position is zero).
+	 */
+	static int packLogItem(int round, LogType type, int value, int position) {
+		return (round << 17) | (type.ordinal() << 11) | (value << 7) | (position + 1);
 	}
 
-	private void printHistory(ArrayList<LogItem> v) {
-		System.out.print(historyToString(v));
+	private static int getLogItemRound(int item) {
+		return item >>> 17;
 	}
 
-	private String historyToString(ArrayList<LogItem> v) {
+	private static int getLogItemTypeOrdinal(int item) {
+		return (item >>> 11) & 0x3f;
+	}
+
+	static LogItem unpackLogItem(int item) {
+		return new LogItem(getLogItemRound(item), LOG_TYPES[getLogItemTypeOrdinal(item)], (item >>> 7) & 0xf, (item & 0x7f) - 1);
+	}
+
+	private void printHistory(int[] log, int size) {
+		System.out.print(historyToString(log, size));
+	}
+
+	private String historyToString(int[] log, int size) {
 		StringBuilder sb = new StringBuilder();
 		if (!recordHistory) {
 			sb.append("History was not recorded.").append(NL);
@@ -454,9 +1654,9 @@ public class QQWing {
 				sb.append(NL);
 			}
 		}
-		for (int i = 0; i < v.size(); i++) {
+		for (int i = 0; i < size; i++) {
 			sb.append(i + 1 + ". ").append(NL);
-			(v.get(i)).print();
+			unpackLogItem(log[i]).print();
 			if (printStyle == PrintStyle.CSV) {
 				sb.append(" -- ").append(NL);
 			} else {
@@ -477,7 +1677,7 @@ public class QQWing {
 
 	public String getSolveInstructionsString() {
 		if (isSolved()) {
-			return historyToString(solveInstructions);
+			return historyToString(solveInstructions, recordHistory ? solveInstructionsSize : 0);
 		} else {
 			return "No solve instructions - Puzzle is not possible to solve.";
 		}
@@ -485,41 +1685,57 @@ public class QQWing {
 
 	public List<LogItem> getSolveInstructions() {
 		if (isSolved()) {
-			return Collections.unmodifiableList(solveInstructions);
+			return new PackedLogItemList(Arrays.copyOf(solveInstructions, recordHistory ? solveInstructionsSize : 0));
 		} else {
 			return Collections.emptyList();
 		}
 	}
 
 	public void printSolveHistory() {
-		printHistory(solveHistory);
+		printHistory(solveHistory, solveHistorySize);
 	}
 
 	public String getSolveHistoryString() {
-		return historyToString(solveHistory);
+		return historyToString(solveHistory, solveHistorySize);
 	}
 
 	public List<LogItem> getSolveHistory() {
-		return Collections.unmodifiableList(solveHistory);
+		return new PackedLogItemList(Arrays.copyOf(solveHistory, solveHistorySize));
 	}
 
 	public boolean solve() {
-		reset();
-		shuffleRandomArrays();
-		return solve(2);
+		startSearch();
+		restartCount = 0;
+		while (true) {
+			reset();
+			shuffleRandomArrays();
+			if (adaptiveStrategyOrder) reorderStrategies();
+			restartLimit = getRestartLimit(restartCount);
+			restartDue = false;
+			boolean solved = solve(2);
+			restartLimit = 0;
+			if (!restartDue || budgetExhausted || isCancelled()) return solved;
+			restartCount++;
+		}
 	}
 
 	private boolean solve(int round) {
 		lastSolveRound = round;
+		if (isSearchStopped()) return false;
+		noteSearchDepth((round - 2) / 2);
 
 		while (singleSolveMove(round)) {
 			if (isSolved()) return true;
 			if (isImpossible()) return false;
 		}
+		// The last move may have been a guess, or a technique that doesn't
+		// check for a solved board
+		if (isSolved()) return true;
+		if (!guessingAllowed) return false;
 
 		int nextGuessRound = round + 1;
 		int nextRound = round + 2;
-		for (int guessNumber = 0; guess(nextGuessRound, guessNumber); guessNumber++) {
+		for (int guessNumber = 0; !isSearchStopped() && guess(nextGuessRound, guessNumber); guessNumber++) {
 			if (isImpossible() || !solve(nextRound)) {
 				rollbackRound(nextRound);
 				rollbackRound(nextGuessRound);
@@ -572,6 +1788,59 @@ public class QQWing {
 		return countSolutions(true);
 	}
 
+	/**
+	 * Count the number of solutions to the puzzle, splitting the search
+	 * between the threads of the given pool. This always uses the exact
+	 * cover search.
+	 */
+	public int countSolutionsInParallel(ForkJoinPool pool) {
+		return countSolutionsInParallel(pool, false);
+	}
+
+	/**
+	 * Count the number of solutions to the puzzle with the given number of
+	 * threads. This always uses the exact cover search.
+	 */
+	public int countSolutionsInParallel(int parallelism) {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return countSolutionsInParallel(pool, false);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Like countSolutionsLimited(), but splitting the search between the
+	 * threads of the given pool. The threads all stop once two solutions
+	 * have been found.
+	 */
+	public int countSolutionsLimitedInParallel(ForkJoinPool pool) {
+		return countSolutionsInParallel(pool, true);
+	}
+
+	private int countSolutionsInParallel(ForkJoinPool pool, boolean limitToTwo) {
+		// Don't record history while counting.
+		boolean recHistory = recordHistory;
+		setRecordHistory(false);
+		boolean lHistory = logHistory;
+		setLogHistory(false);
+
+		reset();
+		startSearch();
+		DancingLinks.SharedBudget budget = new DancingLinks.SharedBudget(searchBudget, searchTimeLimit);
+		int solutionCount = DancingLinks.countSolutions(puzzle.clone(), limitToTwo ? 2 : 0, pool, cancelFlag, budget);
+		searchNodeCount = budget.getNodeCount();
+		searchDepth = budget.getMaxDepth();
+		budgetExhausted = budget.isExhausted();
+
+		// Restore recording history.
+		setRecordHistory(recHistory);
+		setLogHistory(lHistory);
+
+		return solutionCount;
+	}
+
 	private int countSolutions(boolean limitToTwo) {
 		// Don't record history while generating.
 		boolean recHistory = recordHistory;
@@ -580,7 +1849,7 @@ public class QQWing {
 		setLogHistory(false);
 
 		reset();
-		int solutionCount = countSolutions(2, limitToTwo);
+		int solutionCount = countSolutionsToLimit(limitToTwo ? 2 : 0);
 
 		// Restore recording history.
 		setRecordHistory(recHistory);
@@ -589,7 +1858,30 @@ public class QQWing {
 		return solutionCount;
 	}
 
+	/**
+	 * Count the solutions to the puzzle (ignoring any progress on the
+	 * solution) up to the given limit, or all of them if the limit is zero.
+	 * Uses the exact cover search unless it has been turned off.
+	 */
+	private int countSolutionsToLimit(int limit) {
+		startSearch();
+		if (!exactCoverCounting) {
+			reset();
+			if (adaptiveStrategyOrder) reorderStrategies();
+			return countSolutions(2, limit == 2);
+		}
+		if (dancingLinks == null) dancingLinks = new DancingLinks();
+		dancingLinks.setCancelFlag(cancelFlag);
+		dancingLinks.setBudget(searchBudget, searchTimeLimit);
+		int solutionCount = dancingLinks.countSolutions(puzzle, limit);
+		searchNodeCount = dancingLinks.getNodeCount();
+		searchDepth = dancingLinks.getMaxDepth();
+		budgetExhausted = dancingLinks.isBudgetExhausted();
+		return solutionCount;
+	}
+
 	private int countSolutions(int round, boolean limitToTwo) {
+		noteSearchDepth(round - 2);
 		while (singleSolveMove(round)) {
 			if (isSolved()) {
 				rollbackRound(round);
@@ -600,10 +1892,14 @@ public class QQWing {
 				return 0;
 			}
 		}
+		if (isSolved()) {
+			rollbackRound(round);
+			return 1;
+		}
 
 		int solutions = 0;
 		int nextRound = round + 1;
-		for (int guessNumber = 0; guess(nextRound, guessNumber); guessNumber++) {
+		for (int guessNumber = 0; !isSearchStopped() && guess(nextRound, guessNumber); guessNumber++) {
 			solutions += countSolutions(nextRound, limitToTwo);
 			if (limitToTwo && solutions >= 2) {
 				rollbackRound(round);
@@ -614,43 +1910,228 @@ public class QQWing {
 		return solutions;
 	}
 
-	private void rollbackRound(int round) {
-		if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.ROLLBACK));
-		for (int i = 0; i < BOARD_SIZE; i++) {
-			if (solutionRound[i] == round) {
-				solutionRound[i] = 0;
-				solution[i] = 0;
-			}
-		}
-		for (int i = 0; i < POSSIBILITY_SIZE; i++) {
-			if (possibilities[i] == round) {
-				possibilities[i] = 0;
-			}
-		}
-		while (solveInstructions.size() > 0 && (solveInstructions.get(solveInstructions.size() - 1)).getRound() == round) {
-			int i = solveInstructions.size() - 1;
-			solveInstructions.remove(i);
-		}
+	/**
+	 * Undo everything done in the given round. Rounds are always rolled back
+	 * in the reverse of the order in which they were started, so all the
+	 * changes for the round are at the end of the trail.
+	 */
+	void rollbackRound(int round) {
+		addHistoryItem(round, LogType.ROLLBACK, 0, -1);
+		while (trailSize > 0 && (trail[trailSize - 1] >>> 12) == round) {
+			trailSize--;
+			undoTrailEntry(trail[trailSize]);
+		}
+		clearPropagationQueues();
+		removeInstructions(round);
+	}
+
+	private static boolean isNonGuessTrailEntry(int entry) {
+		int round = entry >>> 12;
+		return round >= 2 && round % 2 == 0;
+	}
+
+	private void removeInstructions(int round) {
+		while (solveInstructionsSize > 0 && getLogItemRound(solveInstructions[solveInstructionsSize - 1]) == round) {
+			solveInstructionsSize--;
+			instructionCounts[getLogItemTypeOrdinal(solveInstructions[solveInstructionsSize])]--;
+		}
+	}
+
+	/**
+	 * Put back a possibility that was eliminated, or take back a value that was
+	 * marked, as recorded by the given trail entry.
+	 */
+	private void undoTrailEntry(int entry) {
+		int position = (entry >>> 4) & 0xff;
+		int valIndex = entry & 0xf;
+		if (valIndex == TRAIL_MARK) {
+			int valueBit = 1 << (solution[position] - 1);
+			rowPlaced[cellToRow(position)] &= ~valueBit;
+			columnPlaced[cellToColumn(position)] &= ~valueBit;
+			sectionPlaced[cellToSection(position)] &= ~valueBit;
+			solution[position] = 0;
+			unsolvedCount++;
+			toggleInBucket(position, countPossibilities(position));
+		} else {
+			if (solution[position] == 0) {
+				int count = countPossibilities(position);
+				if (count == 0) emptyCellCount--;
+				toggleInBucket(position, count);
+				toggleInBucket(position, count + 1);
+			}
+			candidates[position] |= 1 << valIndex;
+			updateValuePositions(valIndex, position);
+		}
+	}
+
+	public boolean isSolved() {
+		return unsolvedCount == 0;
+	}
+
+	boolean isImpossible() {
+		return emptyCellCount > 0;
+	}
+
+	/**
+	 * The number of cells that do not yet have a value in the solution.
+	 */
+	int getUnsolvedCount() {
+		return unsolvedCount;
+	}
+
+	/**
+	 * Find the unsolved cell with the fewest possibilities. Ties go to the
+	 * cell that comes first in randomBoardArray.
+	 */
+	int findPositionWithFewestPossibilities() {
+		for (int i = 0; i < possibilityCountBuckets.length; i += 2) {
+			if (possibilityCountBuckets[i] != 0) {
+				return randomBoardArray[Long.numberOfTrailingZeros(possibilityCountBuckets[i])];
+			}
+			if (possibilityCountBuckets[i + 1] != 0) {
+				return randomBoardArray[64 + Long.numberOfTrailingZeros(possibilityCountBuckets[i + 1])];
+			}
+		}
+		return 0;
+	}
+
+	boolean guess(int round, int guessNumber) {
+		int localGuessCount = 0;
+		int position = findPositionWithFewestPossibilities();
+		for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
+			int valIndex = randomPossibilityArray[i];
+			if (isPossible(valIndex, position)) {
+				if (localGuessCount == guessNumber) {
+					int value = valIndex + 1;
+					addHistoryItem(round, LogType.GUESS, value, position);
+					mark(position, round, value);
+					searchNodeCount++;
+					return true;
+				}
+				localGuessCount++;
+			}
+		}
+		return false;
+	}
+
+	private boolean singleSolveMove(int round) {
+		if (adaptiveStrategyOrder) return timedSolveMove(round);
+		for (SolveStrategy strategy : solveStrategies) {
+			if (isStrategyAllowed(strategy) && strategy.apply(this, round)) return true;
+		}
+		return false;
+	}
+
+	private boolean isStrategyAllowed(SolveStrategy strategy) {
+		return strategy.getDifficulty().compareTo(strategyLimit) <= 0;
+	}
+
+	/**
+	 * The same as singleSolveMove, but keeping track of how much time each
+	 * strategy takes and how often it makes a move.
+	 */
+	private boolean timedSolveMove(int round) {
+		for (int i = 0; i < solveStrategies.length; i++) {
+			if (!isStrategyAllowed(solveStrategies[i])) continue;
+			long start = System.nanoTime();
+			boolean moved = solveStrategies[i].apply(this, round);
+			strategyNanos[i] += System.nanoTime() - start;
+			if (moved) {
+				strategyMoves[i]++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sort each run of strategies that have the same difficulty so that the
+	 * ones that have made the most moves per unit of time are tried first.
+	 * The sort is stable, so strategies that haven't been timed yet stay in
+	 * place relative to each other.
+	 */
+	private void reorderStrategies() {
+		for (int i = 1; i < solveStrategies.length; i++) {
+			for (int j = i; j > 0 && solveStrategies[j].getDifficulty() == solveStrategies[j - 1].getDifficulty() && getMoveRate(j) > getMoveRate(j - 1); j--) {
+				swapStrategies(j, j - 1);
+			}
+		}
+	}
+
+	private double getMoveRate(int strategy) {
+		if (strategyNanos[strategy] == 0) return 0;
+		return (double)strategyMoves[strategy] / strategyNanos[strategy];
+	}
+
+	private void swapStrategies(int a, int b) {
+		SolveTechnique strategy = solveStrategies[a];
+		solveStrategies[a] = solveStrategies[b];
+		solveStrategies[b] = strategy;
+		long nanos = strategyNanos[a];
+		strategyNanos[a] = strategyNanos[b];
+		strategyNanos[b] = nanos;
+		int moves = strategyMoves[a];
+		strategyMoves[a] = strategyMoves[b];
+		strategyMoves[b] = moves;
+	}
+
+	/**
+	 * Mark a single (a cell with only one possibility), if there is one.
+	 */
+	boolean single(int round) {
+		if (propagateSingles) return nextQueuedSingle(round);
+		return onlyPossibilityForCell(round);
+	}
+
+	/**
+	 * Mark a hidden single (the only place for a value in a row, column, or
+	 * section), if there is one.
+	 */
+	boolean hiddenSingle(int round) {
+		if (propagateSingles) return nextQueuedHiddenSingle(round);
+		if (onlyValueInSection(round)) return true;
+		if (onlyValueInRow(round)) return true;
+		return onlyValueInColumn(round);
 	}
 
-	public boolean isSolved() {
-		for (int i = 0; i < BOARD_SIZE; i++) {
-			if (solution[i] == 0) {
-				return false;
-			}
-		}
-		return true;
+	boolean pointingPairTriple(int round) {
+		if (pointingRowReduction(round)) return true;
+		return pointingColumnReduction(round);
 	}
 
-	private boolean isImpossible() {
-		for (int position = 0; position < BOARD_SIZE; position++) {
-			if (solution[position] == 0) {
-				int count = 0;
-				for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-					int valPos = getPossibilityIndex(valIndex, position);
-					if (possibilities[valPos] == 0) count++;
+	boolean boxLineReduction(int round) {
+		if (rowBoxReduction(round)) return true;
+		return colBoxReduction(round);
+	}
+
+	/**
+	 * Remove possibilities using a fish with the given number of lines (two
+	 * for an X-Wing, three for a Swordfish), if there is one that removes
+	 * anything. A fish is that many rows in which a value can only go in
+	 * that many columns between them. The value has to go in those columns
+	 * in those rows, so it can be removed from the rest of the columns. The
+	 * same goes with rows and columns swapped.
+	 */
+	boolean fish(int round, int size) {
+		for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
+			for (int lineType = 0; lineType < 2; lineType++) {
+				int firstUnit = lineType * ROW_COL_SEC_SIZE;
+				for (int line = 0; line < ROW_COL_SEC_SIZE; line++) {
+					subsetMasks[line] = valuePositions[(firstUnit + line) * ROW_COL_SEC_SIZE + valIndex];
 				}
-				if (count == 0) {
+				int baseLines = findSubset(size, 0, 0, 0);
+				if (baseLines != 0) {
+					int coverLines = getSubsetUnion(baseLines);
+					for (int line = 0; line < ROW_COL_SEC_SIZE; line++) {
+						if ((baseLines & (1 << line)) == 0) {
+							int[] cells = UNIT_CELLS[firstUnit + line];
+							for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
+								if ((coverLines & (1 << i)) != 0) eliminate(valIndex, cells[i], round);
+							}
+						}
+					}
+					int position = UNIT_CELLS[firstUnit + Integer.numberOfTrailingZeros(baseLines)][Integer.numberOfTrailingZeros(coverLines)];
+					addHistoryItem(round, FISH_LOG_TYPES[size][lineType], valIndex + 1, position);
 					return true;
 				}
 			}
@@ -658,59 +2139,46 @@ public class QQWing {
 		return false;
 	}
 
-	private int findPositionWithFewestPossibilities() {
-		int minPossibilities = 10;
-		int bestPosition = 0;
-		for (int i = 0; i < BOARD_SIZE; i++) {
-			int position = randomBoardArray[i];
-			if (solution[position] == 0) {
-				int count = 0;
-				for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-					int valPos = getPossibilityIndex(valIndex, position);
-					if (possibilities[valPos] == 0) count++;
-				}
-				if (count < minPossibilities) {
-					minPossibilities = count;
-					bestPosition = position;
+	/**
+	 * Remove possibilities using an XY-Wing, if there is one that removes
+	 * anything. An XY-Wing is a cell with two possibilities (x and y) that
+	 * shares a unit with two other cells that have two possibilities each:
+	 * one with x and z, and one with y and z. Whichever of x or y goes in the
+	 * first cell, one of the others must be z, so z can be removed from any
+	 * cell that shares a unit with both of them.
+	 */
+	boolean xyWing(int round) {
+		for (int pivot = 0; pivot < BOARD_SIZE; pivot++) {
+			int pivotValues = candidates[pivot];
+			if (Integer.bitCount(pivotValues) != 2) continue;
+			for (int wing1 : PEERS[pivot]) {
+				int wing1Values = candidates[wing1];
+				if (Integer.bitCount(wing1Values) != 2 || Integer.bitCount(wing1Values & pivotValues) != 1) continue;
+				int zBit = wing1Values & ~pivotValues;
+				int wing2Values = (pivotValues & ~wing1Values) | zBit;
+				for (int wing2 : PEERS[pivot]) {
+					if (candidates[wing2] != wing2Values) continue;
+					boolean doneSomething = false;
+					int zIndex = Integer.numberOfTrailingZeros(zBit);
+					for (int position : PEERS[wing1]) {
+						if (position != wing2 && isPeer(position, wing2) && eliminate(zIndex, position, round)) doneSomething = true;
+					}
+					if (doneSomething) {
+						addHistoryItem(round, LogType.XY_WING, zIndex + 1, pivot);
+						return true;
+					}
 				}
 			}
 		}
-		return bestPosition;
+		return false;
 	}
 
-	private boolean guess(int round, int guessNumber) {
-		int localGuessCount = 0;
-		int position = findPositionWithFewestPossibilities();
-		for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
-			int valIndex = randomPossibilityArray[i];
-			int valPos = getPossibilityIndex(valIndex, position);
-			if (possibilities[valPos] == 0) {
-				if (localGuessCount == guessNumber) {
-					int value = valIndex + 1;
-					if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.GUESS, value, position));
-					mark(position, round, value);
-					return true;
-				}
-				localGuessCount++;
-			}
-		}
-		return false;
+	boolean nakedSubset(int round, int size) {
+		return nakedSubset(round, size, NAKED_SUBSET_LOG_TYPES[size]);
 	}
 
-	private boolean singleSolveMove(int round) {
-		if (onlyPossibilityForCell(round)) return true;
-		if (onlyValueInSection(round)) return true;
-		if (onlyValueInRow(round)) return true;
-		if (onlyValueInColumn(round)) return true;
-		if (handleNakedPairs(round)) return true;
-		if (pointingRowReduction(round)) return true;
-		if (pointingColumnReduction(round)) return true;
-		if (rowBoxReduction(round)) return true;
-		if (colBoxReduction(round)) return true;
-		if (hiddenPairInRow(round)) return true;
-		if (hiddenPairInColumn(round)) return true;
-		if (hiddenPairInSection(round)) return true;
-		return false;
+	boolean hiddenSubset(int round, int size) {
+		return hiddenSubset(round, size, HIDDEN_SUBSET_LOG_TYPES[size]);
 	}
 
 	private boolean colBoxReduction(int round) {
@@ -723,8 +2191,7 @@ public class QQWing {
 					for (int j = 0; j < GRID_SIZE; j++) {
 						int row = i * GRID_SIZE + j;
 						int position = rowColumnToCell(row, col);
-						int valPos = getPossibilityIndex(valIndex, position);
-						if (possibilities[valPos] == 0) {
+						if (isPossible(valIndex, position)) {
 							if (colBox == -1 || colBox == i) {
 								colBox = i;
 							} else {
@@ -744,15 +2211,13 @@ public class QQWing {
 							int row2 = secStartRow + i;
 							int col2 = secStartCol + j;
 							int position = rowColumnToCell(row2, col2);
-							int valPos = getPossibilityIndex(valIndex, position);
-							if (col != col2 && possibilities[valPos] == 0) {
-								possibilities[valPos] = round;
+							if (col != col2 && eliminate(valIndex, position, round)) {
 								doneSomething = true;
 							}
 						}
 					}
 					if (doneSomething) {
-						if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.COLUMN_BOX, valIndex + 1, colStart));
+						addHistoryItem(round, LogType.COLUMN_BOX, valIndex + 1, colStart);
 						return true;
 					}
 				}
@@ -771,8 +2236,7 @@ public class QQWing {
 					for (int j = 0; j < GRID_SIZE; j++) {
 						int column = i * GRID_SIZE + j;
 						int position = rowColumnToCell(row, column);
-						int valPos = getPossibilityIndex(valIndex, position);
-						if (possibilities[valPos] == 0) {
+						if (isPossible(valIndex, position)) {
 							if (rowBox == -1 || rowBox == i) {
 								rowBox = i;
 							} else {
@@ -792,15 +2256,13 @@ public class QQWing {
 							int row2 = secStartRow + i;
 							int col2 = secStartCol + j;
 							int position = rowColumnToCell(row2, col2);
-							int valPos = getPossibilityIndex(valIndex, position);
-							if (row != row2 && possibilities[valPos] == 0) {
-								possibilities[valPos] = round;
+							if (row != row2 && eliminate(valIndex, position, round)) {
 								doneSomething = true;
 							}
 						}
 					}
 					if (doneSomething) {
-						if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.ROW_BOX, valIndex + 1, rowStart));
+						addHistoryItem(round, LogType.ROW_BOX, valIndex + 1, rowStart);
 						return true;
 					}
 				}
@@ -818,8 +2280,7 @@ public class QQWing {
 				for (int j = 0; j < GRID_SIZE; j++) {
 					for (int i = 0; i < GRID_SIZE; i++) {
 						int secVal = secStart + i + (ROW_COL_SEC_SIZE * j);
-						int valPos = getPossibilityIndex(valIndex, secVal);
-						if (possibilities[valPos] == 0) {
+						if (isPossible(valIndex, secVal)) {
 							if (boxRow == -1 || boxRow == j) {
 								boxRow = j;
 							} else {
@@ -836,14 +2297,12 @@ public class QQWing {
 					for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
 						int position = rowStart + i;
 						int section2 = cellToSection(position);
-						int valPos = getPossibilityIndex(valIndex, position);
-						if (section != section2 && possibilities[valPos] == 0) {
-							possibilities[valPos] = round;
+						if (section != section2 && eliminate(valIndex, position, round)) {
 							doneSomething = true;
 						}
 					}
 					if (doneSomething) {
-						if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.POINTING_PAIR_TRIPLE_ROW, valIndex + 1, rowStart));
+						addHistoryItem(round, LogType.POINTING_PAIR_TRIPLE_ROW, valIndex + 1, rowStart);
 						return true;
 					}
 				}
@@ -861,8 +2320,7 @@ public class QQWing {
 				for (int i = 0; i < GRID_SIZE; i++) {
 					for (int j = 0; j < GRID_SIZE; j++) {
 						int secVal = secStart + i + (ROW_COL_SEC_SIZE * j);
-						int valPos = getPossibilityIndex(valIndex, secVal);
-						if (possibilities[valPos] == 0) {
+						if (isPossible(valIndex, secVal)) {
 							if (boxCol == -1 || boxCol == i) {
 								boxCol = i;
 							} else {
@@ -879,14 +2337,12 @@ public class QQWing {
 					for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
 						int position = colStart + (ROW_COL_SEC_SIZE * i);
 						int section2 = cellToSection(position);
-						int valPos = getPossibilityIndex(valIndex, position);
-						if (section != section2 && possibilities[valPos] == 0) {
-							possibilities[valPos] = round;
+						if (section != section2 && eliminate(valIndex, position, round)) {
 							doneSomething = true;
 						}
 					}
 					if (doneSomething) {
-						if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.POINTING_PAIR_TRIPLE_COLUMN, valIndex + 1, colStart));
+						addHistoryItem(round, LogType.POINTING_PAIR_TRIPLE_COLUMN, valIndex + 1, colStart);
 						return true;
 					}
 				}
@@ -896,292 +2352,112 @@ public class QQWing {
 	}
 
 	private int countPossibilities(int position) {
-		int count = 0;
-		for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-			int valPos = getPossibilityIndex(valIndex, position);
-			if (possibilities[valPos] == 0) count++;
-		}
-		return count;
-	}
-
-	private boolean arePossibilitiesSame(int position1, int position2) {
-		for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-			int valPos1 = getPossibilityIndex(valIndex, position1);
-			int valPos2 = getPossibilityIndex(valIndex, position2);
-			if ((possibilities[valPos1] == 0 || possibilities[valPos2] == 0) && (possibilities[valPos1] != 0 || possibilities[valPos2] != 0)) {
-				return false;
-			}
-		}
-		return true;
+		return Integer.bitCount(candidates[position]);
 	}
 
-	private boolean removePossibilitiesInOneFromTwo(int position1, int position2, int round) {
-		boolean doneSomething = false;
-		for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-			int valPos1 = getPossibilityIndex(valIndex, position1);
-			int valPos2 = getPossibilityIndex(valIndex, position2);
-			if (possibilities[valPos1] == 0 && possibilities[valPos2] == 0) {
-				possibilities[valPos2] = round;
-				doneSomething = true;
+	/**
+	 * Remove possibilities using a naked subset of the given size (2-4) in
+	 * some unit, if there is one that removes anything. A naked subset is that
+	 * many cells in a unit that have only that many possibilities between
+	 * them. Those values have to go in those cells, so they can be removed
+	 * from the rest of the unit.
+	 */
+	private boolean nakedSubset(int round, int size, LogType[] logTypes) {
+		for (int unit = 0; unit < UNIT_COUNT; unit++) {
+			int[] cells = UNIT_CELLS[unit];
+			for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
+				subsetMasks[i] = candidates[cells[i]];
 			}
-		}
-		return doneSomething;
-	}
-
-	private boolean hiddenPairInColumn(int round) {
-		for (int column = 0; column < ROW_COL_SEC_SIZE; column++) {
-			for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-				int r1 = -1;
-				int r2 = -1;
-				int valCount = 0;
-				for (int row = 0; row < ROW_COL_SEC_SIZE; row++) {
-					int position = rowColumnToCell(row, column);
-					int valPos = getPossibilityIndex(valIndex, position);
-					if (possibilities[valPos] == 0) {
-						if (r1 == -1 || r1 == row) {
-							r1 = row;
-						} else if (r2 == -1 || r2 == row) {
-							r2 = row;
-						}
-						valCount++;
-					}
-				}
-				if (valCount == 2) {
-					for (int valIndex2 = valIndex + 1; valIndex2 < ROW_COL_SEC_SIZE; valIndex2++) {
-						int r3 = -1;
-						int r4 = -1;
-						int valCount2 = 0;
-						for (int row = 0; row < ROW_COL_SEC_SIZE; row++) {
-							int position = rowColumnToCell(row, column);
-							int valPos = getPossibilityIndex(valIndex2, position);
-							if (possibilities[valPos] == 0) {
-								if (r3 == -1 || r3 == row) {
-									r3 = row;
-								} else if (r4 == -1 || r4 == row) {
-									r4 = row;
-								}
-								valCount2++;
-							}
-						}
-						if (valCount2 == 2 && r1 == r3 && r2 == r4) {
-							boolean doneSomething = false;
-							for (int valIndex3 = 0; valIndex3 < ROW_COL_SEC_SIZE; valIndex3++) {
-								if (valIndex3 != valIndex && valIndex3 != valIndex2) {
-									int position1 = rowColumnToCell(r1, column);
-									int position2 = rowColumnToCell(r2, column);
-									int valPos1 = getPossibilityIndex(valIndex3, position1);
-									int valPos2 = getPossibilityIndex(valIndex3, position2);
-									if (possibilities[valPos1] == 0) {
-										possibilities[valPos1] = round;
-										doneSomething = true;
-									}
-									if (possibilities[valPos2] == 0) {
-										possibilities[valPos2] = round;
-										doneSomething = true;
-									}
-								}
-							}
-							if (doneSomething) {
-								if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.HIDDEN_PAIR_COLUMN, valIndex + 1, rowColumnToCell(r1, column)));
-								return true;
-							}
-						}
+			int subsetCells = findSubset(size, 0, 0, 0);
+			if (subsetCells != 0) {
+				int subsetValues = getSubsetUnion(subsetCells);
+				for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
+					if ((subsetCells & (1 << i)) == 0) {
+						eliminateAll(subsetMasks[i] & subsetValues, cells[i], round);
 					}
 				}
+				int position = cells[Integer.numberOfTrailingZeros(subsetCells)];
+				addHistoryItem(round, logTypes[unit / ROW_COL_SEC_SIZE], 0, position);
+				return true;
 			}
 		}
 		return false;
 	}
 
-	private boolean hiddenPairInSection(int round) {
-		for (int section = 0; section < ROW_COL_SEC_SIZE; section++) {
-			for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-				int si1 = -1;
-				int si2 = -1;
-				int valCount = 0;
-				for (int secInd = 0; secInd < ROW_COL_SEC_SIZE; secInd++) {
-					int position = sectionToCell(section, secInd);
-					int valPos = getPossibilityIndex(valIndex, position);
-					if (possibilities[valPos] == 0) {
-						if (si1 == -1 || si1 == secInd) {
-							si1 = secInd;
-						} else if (si2 == -1 || si2 == secInd) {
-							si2 = secInd;
-						}
-						valCount++;
-					}
-				}
-				if (valCount == 2) {
-					for (int valIndex2 = valIndex + 1; valIndex2 < ROW_COL_SEC_SIZE; valIndex2++) {
-						int si3 = -1;
-						int si4 = -1;
-						int valCount2 = 0;
-						for (int secInd = 0; secInd < ROW_COL_SEC_SIZE; secInd++) {
-							int position = sectionToCell(section, secInd);
-							int valPos = getPossibilityIndex(valIndex2, position);
-							if (possibilities[valPos] == 0) {
-								if (si3 == -1 || si3 == secInd) {
-									si3 = secInd;
-								} else if (si4 == -1 || si4 == secInd) {
-									si4 = secInd;
-								}
-								valCount2++;
-							}
-						}
-						if (valCount2 == 2 && si1 == si3 && si2 == si4) {
-							boolean doneSomething = false;
-							for (int valIndex3 = 0; valIndex3 < ROW_COL_SEC_SIZE; valIndex3++) {
-								if (valIndex3 != valIndex && valIndex3 != valIndex2) {
-									int position1 = sectionToCell(section, si1);
-									int position2 = sectionToCell(section, si2);
-									int valPos1 = getPossibilityIndex(valIndex3, position1);
-									int valPos2 = getPossibilityIndex(valIndex3, position2);
-									if (possibilities[valPos1] == 0) {
-										possibilities[valPos1] = round;
-										doneSomething = true;
-									}
-									if (possibilities[valPos2] == 0) {
-										possibilities[valPos2] = round;
-										doneSomething = true;
-									}
-								}
-							}
-							if (doneSomething) {
-								if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.HIDDEN_PAIR_SECTION, valIndex + 1, sectionToCell(section, si1)));
-								return true;
-							}
-						}
+	/**
+	 * Remove possibilities using a hidden subset of the given size (2-4) in
+	 * some unit, if there is one that removes anything. A hidden subset is
+	 * that many values that can only go in that many cells of a unit. Those
+	 * cells have to hold those values, so any other possibilities can be
+	 * removed from them.
+	 */
+	private boolean hiddenSubset(int round, int size, LogType[] logTypes) {
+		for (int unit = 0; unit < UNIT_COUNT; unit++) {
+			int[] cells = UNIT_CELLS[unit];
+			System.arraycopy(valuePositions, unit * ROW_COL_SEC_SIZE, subsetMasks, 0, ROW_COL_SEC_SIZE);
+			int subsetValues = findSubset(size, 0, 0, 0);
+			if (subsetValues != 0) {
+				int subsetCells = getSubsetUnion(subsetValues);
+				for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
+					if ((subsetCells & (1 << i)) != 0) {
+						eliminateAll(candidates[cells[i]] & ~subsetValues, cells[i], round);
 					}
 				}
+				int value = Integer.numberOfTrailingZeros(subsetValues) + 1;
+				int position = cells[Integer.numberOfTrailingZeros(subsetCells)];
+				addHistoryItem(round, logTypes[unit / ROW_COL_SEC_SIZE], value, position);
+				return true;
 			}
 		}
 		return false;
 	}
 
-	private boolean hiddenPairInRow(int round) {
-		for (int row = 0; row < ROW_COL_SEC_SIZE; row++) {
-			for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-				int c1 = -1;
-				int c2 = -1;
-				int valCount = 0;
-				for (int column = 0; column < ROW_COL_SEC_SIZE; column++) {
-					int position = rowColumnToCell(row, column);
-					int valPos = getPossibilityIndex(valIndex, position);
-					if (possibilities[valPos] == 0) {
-						if (c1 == -1 || c1 == column) {
-							c1 = column;
-						} else if (c2 == -1 || c2 == column) {
-							c2 = column;
-						}
-						valCount++;
-					}
-				}
-				if (valCount == 2) {
-					for (int valIndex2 = valIndex + 1; valIndex2 < ROW_COL_SEC_SIZE; valIndex2++) {
-						int c3 = -1;
-						int c4 = -1;
-						int valCount2 = 0;
-						for (int column = 0; column < ROW_COL_SEC_SIZE; column++) {
-							int position = rowColumnToCell(row, column);
-							int valPos = getPossibilityIndex(valIndex2, position);
-							if (possibilities[valPos] == 0) {
-								if (c3 == -1 || c3 == column) {
-									c3 = column;
-								} else if (c4 == -1 || c4 == column) {
-									c4 = column;
-								}
-								valCount2++;
-							}
-						}
-						if (valCount2 == 2 && c1 == c3 && c2 == c4) {
-							boolean doneSomething = false;
-							for (int valIndex3 = 0; valIndex3 < ROW_COL_SEC_SIZE; valIndex3++) {
-								if (valIndex3 != valIndex && valIndex3 != valIndex2) {
-									int position1 = rowColumnToCell(row, c1);
-									int position2 = rowColumnToCell(row, c2);
-									int valPos1 = getPossibilityIndex(valIndex3, position1);
-									int valPos2 = getPossibilityIndex(valIndex3, position2);
-									if (possibilities[valPos1] == 0) {
-										possibilities[valPos1] = round;
-										doneSomething = true;
-									}
-									if (possibilities[valPos2] == 0) {
-										possibilities[valPos2] = round;
-										doneSomething = true;
-									}
-								}
-							}
-							if (doneSomething) {
-								if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.HIDDEN_PAIR_ROW, valIndex + 1, rowColumnToCell(row, c1)));
-								return true;
-							}
-						}
-					}
-				}
+	/**
+	 * Search subsetMasks for the given number of masks that have only that
+	 * many bits set between them, where one of the other masks shares a bit
+	 * with them. Naked subsets use the possibilities of each cell in a unit
+	 * as the masks, and hidden subsets use the cells in which each value can
+	 * go. Masks with fewer than two bits (singles, or solved cells and placed
+	 * values) are never part of a subset.
+	 *
+	 * @return A bit set of the indexes of the masks in the subset, or zero if
+	 *         there is no such subset
+	 */
+	private int findSubset(int size, int start, int subset, int union) {
+		if (Integer.bitCount(subset) == size) {
+			if (Integer.bitCount(union) != size) return 0;
+			for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
+				if ((subset & (1 << i)) == 0 && (subsetMasks[i] & union) != 0) return subset;
 			}
+			return 0;
 		}
-		return false;
+		for (int i = start; i < ROW_COL_SEC_SIZE; i++) {
+			int count = Integer.bitCount(subsetMasks[i]);
+			if (count < 2 || count > size) continue;
+			int newUnion = union | subsetMasks[i];
+			if (Integer.bitCount(newUnion) > size) continue;
+			int found = findSubset(size, i + 1, subset | (1 << i), newUnion);
+			if (found != 0) return found;
+		}
+		return 0;
 	}
 
-	private boolean handleNakedPairs(int round) {
-		for (int position = 0; position < BOARD_SIZE; position++) {
-			int possibilities = countPossibilities(position);
-			if (possibilities == 2) {
-				int row = cellToRow(position);
-				int column = cellToColumn(position);
-				int section = cellToSectionStartCell(position);
-				for (int position2 = position; position2 < BOARD_SIZE; position2++) {
-					if (position != position2) {
-						int possibilities2 = countPossibilities(position2);
-						if (possibilities2 == 2 && arePossibilitiesSame(position, position2)) {
-							if (row == cellToRow(position2)) {
-								boolean doneSomething = false;
-								for (int column2 = 0; column2 < ROW_COL_SEC_SIZE; column2++) {
-									int position3 = rowColumnToCell(row, column2);
-									if (position3 != position && position3 != position2 && removePossibilitiesInOneFromTwo(position, position3, round)) {
-										doneSomething = true;
-									}
-								}
-								if (doneSomething) {
-									if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.NAKED_PAIR_ROW, 0, position));
-									return true;
-								}
-							}
-							if (column == cellToColumn(position2)) {
-								boolean doneSomething = false;
-								for (int row2 = 0; row2 < ROW_COL_SEC_SIZE; row2++) {
-									int position3 = rowColumnToCell(row2, column);
-									if (position3 != position && position3 != position2 && removePossibilitiesInOneFromTwo(position, position3, round)) {
-										doneSomething = true;
-									}
-								}
-								if (doneSomething) {
-									if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.NAKED_PAIR_COLUMN, 0, position));
-									return true;
-								}
-							}
-							if (section == cellToSectionStartCell(position2)) {
-								boolean doneSomething = false;
-								int secStart = cellToSectionStartCell(position);
-								for (int i = 0; i < 3; i++) {
-									for (int j = 0; j < 3; j++) {
-										int position3 = secStart + i + (ROW_COL_SEC_SIZE * j);
-										if (position3 != position && position3 != position2 && removePossibilitiesInOneFromTwo(position, position3, round)) {
-											doneSomething = true;
-										}
-									}
-								}
-								if (doneSomething) {
-									if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.NAKED_PAIR_SECTION, 0, position));
-									return true;
-								}
-							}
-						}
-					}
-				}
-			}
+	private int getSubsetUnion(int subset) {
+		int union = 0;
+		for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
+			if ((subset & (1 << i)) != 0) union |= subsetMasks[i];
+		}
+		return union;
+	}
+
+	/**
+	 * Remove each of the values in the given mask from the possibilities of
+	 * the given position.
+	 */
+	private void eliminateAll(int valueMask, int position, int round) {
+		for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
+			if ((valueMask & (1 << valIndex)) != 0) eliminate(valIndex, position, round);
 		}
-		return false;
 	}
 
 	/**
@@ -1191,27 +2467,7 @@ public class QQWing {
 	 * "hidden single"
 	 */
 	private boolean onlyValueInRow(int round) {
-		for (int row = 0; row < ROW_COL_SEC_SIZE; row++) {
-			for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-				int count = 0;
-				int lastPosition = 0;
-				for (int col = 0; col < ROW_COL_SEC_SIZE; col++) {
-					int position = (row * ROW_COL_SEC_SIZE) + col;
-					int valPos = getPossibilityIndex(valIndex, position);
-					if (possibilities[valPos] == 0) {
-						count++;
-						lastPosition = position;
-					}
-				}
-				if (count == 1) {
-					int value = valIndex + 1;
-					if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.HIDDEN_SINGLE_ROW, value, lastPosition));
-					mark(lastPosition, round, value);
-					return true;
-				}
-			}
-		}
-		return false;
+		return markHiddenSingle(round, 0);
 	}
 
 	/**
@@ -1221,27 +2477,7 @@ public class QQWing {
 	 * called a "hidden single"
 	 */
 	private boolean onlyValueInColumn(int round) {
-		for (int col = 0; col < ROW_COL_SEC_SIZE; col++) {
-			for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-				int count = 0;
-				int lastPosition = 0;
-				for (int row = 0; row < ROW_COL_SEC_SIZE; row++) {
-					int position = rowColumnToCell(row, col);
-					int valPos = getPossibilityIndex(valIndex, position);
-					if (possibilities[valPos] == 0) {
-						count++;
-						lastPosition = position;
-					}
-				}
-				if (count == 1) {
-					int value = valIndex + 1;
-					if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.HIDDEN_SINGLE_COLUMN, value, lastPosition));
-					mark(lastPosition, round, value);
-					return true;
-				}
-			}
-		}
-		return false;
+		return markHiddenSingle(round, ROW_COL_SEC_SIZE);
 	}
 
 	/**
@@ -1251,32 +2487,107 @@ public class QQWing {
 	 * called a "hidden single"
 	 */
 	private boolean onlyValueInSection(int round) {
-		for (int sec = 0; sec < ROW_COL_SEC_SIZE; sec++) {
-			int secPos = sectionToFirstCell(sec);
-			for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-				int count = 0;
-				int lastPosition = 0;
-				for (int i = 0; i < GRID_SIZE; i++) {
-					for (int j = 0; j < GRID_SIZE; j++) {
-						int position = secPos + i + ROW_COL_SEC_SIZE * j;
-						int valPos = getPossibilityIndex(valIndex, position);
-						if (possibilities[valPos] == 0) {
-							count++;
-							lastPosition = position;
-						}
-					}
-				}
-				if (count == 1) {
-					int value = valIndex + 1;
-					if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.HIDDEN_SINGLE_SECTION, value, lastPosition));
-					mark(lastPosition, round, value);
-					return true;
-				}
+		return markHiddenSingle(round, 2 * ROW_COL_SEC_SIZE);
+	}
+
+	/**
+	 * Mark the next cell in the single queue that hasn't been marked yet.
+	 * Only used when propagating singles.
+	 */
+	private boolean nextQueuedSingle(int round) {
+		while (singleQueueHead < singleQueueTail) {
+			int position = singleQueue[singleQueueHead++];
+			if (solution[position] == 0) {
+				int value = Integer.numberOfTrailingZeros(candidates[position]) + 1;
+				mark(position, round, value);
+				addHistoryItem(round, LogType.SINGLE, value, position);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check the queued units for a hidden single, in the order they were
+	 * queued, and mark the first one found. Marking it queues its unit again,
+	 * so any other hidden singles in the unit are found later. Only used when
+	 * propagating singles.
+	 */
+	private boolean nextQueuedHiddenSingle(int round) {
+		while (unitQueueSize > 0) {
+			int unit = unitQueue[unitQueueHead];
+			unitQueueHead = (unitQueueHead + 1) % UNIT_COUNT;
+			unitQueueSize--;
+			queuedUnits &= ~(1 << unit);
+
+			if (hiddenSingleValues[unit] != 0) {
+				int valIndex = Integer.numberOfTrailingZeros(hiddenSingleValues[unit]);
+				int position = getOnlyPositionForValue(unit, valIndex);
+				int value = valIndex + 1;
+				addHistoryItem(round, getHiddenSingleType(unit), value, position);
+				mark(position, round, value);
+				return true;
 			}
 		}
 		return false;
 	}
 
+	private static LogType getHiddenSingleType(int unit) {
+		switch (unit / ROW_COL_SEC_SIZE) {
+			case 0:
+				return LogType.HIDDEN_SINGLE_ROW;
+			case 1:
+				return LogType.HIDDEN_SINGLE_COLUMN;
+			default:
+				return LogType.HIDDEN_SINGLE_SECTION;
+		}
+	}
+
+	private void queueUnit(int unit) {
+		int unitBit = 1 << unit;
+		if ((queuedUnits & unitBit) != 0) return;
+		queuedUnits |= unitBit;
+		unitQueue[(unitQueueHead + unitQueueSize) % UNIT_COUNT] = unit;
+		unitQueueSize++;
+	}
+
+	/**
+	 * Empty the propagation queues. Rolling back always returns to a position
+	 * in which propagation had already finished, so nothing needs to stay
+	 * queued.
+	 */
+	private void clearPropagationQueues() {
+		singleQueueHead = 0;
+		singleQueueTail = 0;
+		unitQueueHead = 0;
+		unitQueueSize = 0;
+		queuedUnits = 0;
+	}
+
+	/**
+	 * Mark the hidden single for the lowest value in the first of the nine
+	 * units starting at the given unit that has one, if there is one.
+	 */
+	private boolean markHiddenSingle(int round, int firstUnit) {
+		int units = (unitsWithHiddenSingles >>> firstUnit) & ALL_POSSIBILITIES;
+		if (units == 0) return false;
+		int unit = firstUnit + Integer.numberOfTrailingZeros(units);
+		int valIndex = Integer.numberOfTrailingZeros(hiddenSingleValues[unit]);
+		int position = getOnlyPositionForValue(unit, valIndex);
+		int value = valIndex + 1;
+		addHistoryItem(round, getHiddenSingleType(unit), value, position);
+		mark(position, round, value);
+		return true;
+	}
+
+	/**
+	 * The cell (0-80) in the given unit that is the only one in which the
+	 * given value (0-8) is still possible.
+	 */
+	private int getOnlyPositionForValue(int unit, int valIndex) {
+		return UNIT_CELLS[unit][Integer.numberOfTrailingZeros(valuePositions[unit * ROW_COL_SEC_SIZE + valIndex])];
+	}
+
 	/**
 	 * Mark exactly one cell that has a single possibility, if such a cell
 	 * exists. This method will look for a cell that has only one possibility.
@@ -1285,18 +2596,11 @@ public class QQWing {
 	private boolean onlyPossibilityForCell(int round) {
 		for (int position = 0; position < BOARD_SIZE; position++) {
 			if (solution[position] == 0) {
-				int count = 0;
-				int lastValue = 0;
-				for (int valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-					int valPos = getPossibilityIndex(valIndex, position);
-					if (possibilities[valPos] == 0) {
-						count++;
-						lastValue = valIndex + 1;
-					}
-				}
+				int count = countPossibilities(position);
 				if (count == 1) {
+					int lastValue = Integer.numberOfTrailingZeros(candidates[position]) + 1;
 					mark(position, round, lastValue);
-					if (logHistory || recordHistory) addHistoryItem(new LogItem(round, LogType.SINGLE, lastValue, position));
+					addHistoryItem(round, LogType.SINGLE, lastValue, position);
 					return true;
 				}
 			}
@@ -1314,34 +2618,31 @@ public class QQWing {
 	 */
 	private void mark(int position, int round, int value) {
 		if (solution[position] != 0) throw new IllegalArgumentException("Marking position that already has been marked.");
-		if (solutionRound[position] != 0) throw new IllegalArgumentException("Marking position that was marked another round.");
 		int valIndex = value - 1;
+		if (!isPossible(valIndex, position)) throw new IllegalArgumentException("Marking impossible position.");
 		solution[position] = value;
+		unsolvedCount--;
+		toggleInBucket(position, countPossibilities(position));
+		trail[trailSize++] = (round << 12) | (position << 4) | TRAIL_MARK;
 
-		int possInd = getPossibilityIndex(valIndex, position);
-		if (possibilities[possInd] != 0) throw new IllegalArgumentException("Marking impossible position.");
+		// Record the value as placed in its row, column, and section
+		int valueBit = 1 << valIndex;
+		rowPlaced[cellToRow(position)] |= valueBit;
+		columnPlaced[cellToColumn(position)] |= valueBit;
+		sectionPlaced[cellToSection(position)] |= valueBit;
 
 		// Take this value out of the possibilities for everything in the row
-		solutionRound[position] = round;
 		int rowStart = cellToRow(position) * ROW_COL_SEC_SIZE;
 		for (int col = 0; col < ROW_COL_SEC_SIZE; col++) {
 			int rowVal = rowStart + col;
-			int valPos = getPossibilityIndex(valIndex, rowVal);
-			// System.out.println("Row Start: "+rowStart+" Row Value: "+rowVal+" Value Position: "+valPos);
-			if (possibilities[valPos] == 0) {
-				possibilities[valPos] = round;
-			}
+			eliminate(valIndex, rowVal, round);
 		}
 
 		// Take this value out of the possibilities for everything in the column
 		int colStart = cellToColumn(position);
 		for (int i = 0; i < ROW_COL_SEC_SIZE; i++) {
 			int colVal = colStart + (ROW_COL_SEC_SIZE * i);
-			int valPos = getPossibilityIndex(valIndex, colVal);
-			// System.out.println("Col Start: "+colStart+" Col Value: "+colVal+" Value Position: "+valPos);
-			if (possibilities[valPos] == 0) {
-				possibilities[valPos] = round;
-			}
+			eliminate(valIndex, colVal, round);
 		}
 
 		// Take this value out of the possibilities for everything in section
@@ -1349,20 +2650,104 @@ public class QQWing {
 		for (int i = 0; i < GRID_SIZE; i++) {
 			for (int j = 0; j < GRID_SIZE; j++) {
 				int secVal = secStart + i + (ROW_COL_SEC_SIZE * j);
-				int valPos = getPossibilityIndex(valIndex, secVal);
-				// System.out.println("Sec Start: "+secStart+" Sec Value: "+secVal+" Value Position: "+valPos);
-				if (possibilities[valPos] == 0) {
-					possibilities[valPos] = round;
-				}
+				eliminate(valIndex, secVal, round);
 			}
 		}
 
 		// This position itself is determined, it should have possibilities.
 		for (valIndex = 0; valIndex < ROW_COL_SEC_SIZE; valIndex++) {
-			int valPos = getPossibilityIndex(valIndex, position);
-			if (possibilities[valPos] == 0) {
-				possibilities[valPos] = round;
-			}
+			eliminate(valIndex, position, round);
+		}
+	}
+
+	/**
+	 * The bit mask of the values that are still possible for the given
+	 * position (0-80).
+	 */
+	int getCandidates(int position) {
+		return candidates[position];
+	}
+
+	/**
+	 * Whether the given value (0-8) is still a possibility for the given
+	 * position (0-80).
+	 */
+	private boolean isPossible(int valIndex, int position) {
+		return (candidates[position] & (1 << valIndex)) != 0;
+	}
+
+	/**
+	 * Remove the given value (0-8) from the possibilities of the given position
+	 * (0-80), recording the round in which it was removed on the trail for
+	 * rollback.
+	 *
+	 * @return true if the value had been a possibility
+	 */
+	private boolean eliminate(int valIndex, int position, int round) {
+		int valueBit = 1 << valIndex;
+		if ((candidates[position] & valueBit) == 0) return false;
+		candidates[position] &= ~valueBit;
+		updateValuePositions(valIndex, position);
+		if (solution[position] == 0) {
+			int count = countPossibilities(position);
+			if (count == 0) emptyCellCount++;
+			toggleInBucket(position, count + 1);
+			toggleInBucket(position, count);
+			if (propagateSingles && count == 1) singleQueue[singleQueueTail++] = position;
+		}
+		if (propagateSingles) {
+			queueUnit(cellToRow(position));
+			queueUnit(ROW_COL_SEC_SIZE + cellToColumn(position));
+			queueUnit(2 * ROW_COL_SEC_SIZE + cellToSection(position));
+		}
+		trail[trailSize++] = (round << 12) | (position << 4) | valIndex;
+		return true;
+	}
+
+	/**
+	 * Flip the bit for the given position (0-80) in the value positions of its
+	 * row, column, and section for the given value (0-8), after the value has
+	 * been eliminated from or restored to the position's possibilities.
+	 */
+	private void updateValuePositions(int valIndex, int position) {
+		int row = cellToRow(position);
+		int column = cellToColumn(position);
+		int section = cellToSection(position);
+		boolean possible = isPossible(valIndex, position);
+		updateValuePosition(row, column, valIndex, possible);
+		updateValuePosition(ROW_COL_SEC_SIZE + column, row, valIndex, possible);
+		updateValuePosition(2 * ROW_COL_SEC_SIZE + section, (row % GRID_SIZE) * GRID_SIZE + column % GRID_SIZE, valIndex, possible);
+	}
+
+	/**
+	 * The bit mask of the cells in the given unit (as numbered in
+	 * UNIT_CELLS) in which the given value (0-8) is still possible.
+	 */
+	int getValuePositions(int unit, int valIndex) {
+		return valuePositions[unit * ROW_COL_SEC_SIZE + valIndex];
+	}
+
+	/**
+	 * The bit mask of the values that are possible in exactly one cell of
+	 * the given unit.
+	 */
+	int getHiddenSingleValues(int unit) {
+		return hiddenSingleValues[unit];
+	}
+
+	private void updateValuePosition(int unit, int offset, int valIndex, boolean possible) {
+		int index = unit * ROW_COL_SEC_SIZE + valIndex;
+		valuePositions[index] ^= 1 << offset;
+		valuePositionCounts[index] += possible ? 1 : -1;
+		if (valuePositionCounts[index] == 1) {
+			hiddenSingleValues[unit] |= 1 << valIndex;
+		} else {
+			hiddenSingleValues[unit] &= ~(1 << valIndex);
+		}
+		if (hiddenSingleValues[unit] != 0) {
+			unitsWithHiddenSingles |= 1 << unit;
+		} else {
+			unitsWithHiddenSingles &= ~(1 << unit);
 		}
 	}
 
@@ -1443,34 +2828,51 @@ public class QQWing {
 	}
 
 	/**
-	 * Given a vector of LogItems, determine how many log items in the vector
-	 * are of the specified type.
+	 * Get the minimal lexicographic form of the puzzle: of all the puzzles
+	 * that it can be turned into by relabeling digits, reordering bands,
+	 * stacks, rows within bands, and columns within stacks, and transposing,
+	 * the one whose 81 values (0 for unknown) come first. Puzzles that are
+	 * the same up to these changes have the same canonical form.
 	 */
-	private int getLogCount(ArrayList<LogItem> v, LogType type) {
-		int count = 0;
-		for (int i = 0; i < v.size(); i++) {
-			if ((v.get(i)).getType() == type) count++;
-		}
-		return count;
+	public int[] getCanonicalPuzzle() {
+		int[] canonical = new int[BOARD_SIZE];
+		if (canonicalizer == null) canonicalizer = new Canonicalizer();
+		canonicalizer.canonicalize(puzzle, canonical);
+		return canonical;
+	}
+
+	/**
+	 * Get a 64 bit hash of the canonical form of the puzzle, the same for
+	 * every rearrangement of the puzzle and the same from run to run.
+	 */
+	public long getCanonicalHash() {
+		return Canonicalizer.hash(getCanonicalPuzzle());
+	}
+
+	/**
+	 * The number of solve instructions of the specified type.
+	 */
+	private int getInstructionCount(LogType type) {
+		return instructionCounts[type.ordinal()];
 	}
 
 	/**
 	 * Shuffle the values in an array of integers.
 	 */
-	private static void shuffleArray(int[] array, int size) {
+	private void shuffleArray(int[] array, int size) {
 		for (int i = 0; i < size; i++) {
 			int tailSize = size - i;
-			int randTailPos = Math.abs(random.nextInt()) % tailSize + i;
+			int randTailPos = random.nextInt(tailSize) + i;
 			int temp = array[i];
 			array[i] = array[randTailPos];
 			array[randTailPos] = temp;
 		}
 	}
 
-	private static Symmetry getRandomSymmetry() {
+	private Symmetry getRandomSymmetry() {
 		Symmetry[] values = Symmetry.values();
 		// not the first and last value which are NONE and RANDOM
-		return values[(Math.abs(random.nextInt()) % (values.length - 1)) + 1];
+		return values[random.nextInt(values.length - 2) + 1];
 	}
 
 	/**
@@ -1544,6 +2946,13 @@ public class QQWing {
 		return (row * ROW_COL_SEC_SIZE) + column;
 	}
 
+	/**
+	 * Whether the two cells (0-80) are in the same row, column, or section.
+	 */
+	static boolean isPeer(int cell1, int cell2) {
+		return cellToRow(cell1) == cellToRow(cell2) || cellToColumn(cell1) == cellToColumn(cell2) || cellToSection(cell1) == cellToSection(cell2);
+	}
+
 	/**
 	 * Given a section (0-8) and an offset into that section (0-8) calculate the
 	 * cell (0-80)
@@ -1553,4 +2962,27 @@ public class QQWing {
 			+ ((offset / GRID_SIZE) * ROW_COL_SEC_SIZE)
 			+ (offset % GRID_SIZE));
 	}
+
+	/**
+	 * A read only list of the log items packed in an array, which the list
+	 * takes ownership of. Each LogItem is created when it is asked for.
+	 */
+	private static class PackedLogItemList extends AbstractList<LogItem> {
+
+		private final int[] items;
+
+		private PackedLogItemList(int[] items) {
+			this.items = items;
+		}
+
+		@Override
+		public LogItem get(int index) {
+			return unpackLogItem(items[index]);
+		}
+
+		@Override
+		public int size() {
+			return items.length;
+		}
+	}
 }
@@ -20,8 +20,18 @@
 // @formatter:on
 package com.qqwing;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -29,6 +39,20 @@ class QQWingMain {
 
 	private static final String NL = System.getProperties().getProperty("line.separator");
 
+	/**
+	 * How many times to rearrange a puzzle looking for a copy that hasn't
+	 * been printed yet when expanding, before skipping the rest of its
+	 * copies with a warning. Only puzzles with a lot of symmetry have few
+	 * enough distinct rearrangements to run out.
+	 */
+	private static final int MAX_EXPAND_ATTEMPTS = 100;
+
+	/**
+	 * Added to the seed for each generated puzzle, so that puzzles next to
+	 * each other in number get unrelated seeds.
+	 */
+	private static final long PUZZLE_SEED_GAMMA = 0x9e3779b97f4a7c15L;
+
 	private QQWingMain(){
 	}
 
@@ -84,6 +108,18 @@ class QQWingMain {
 					System.err.println("Invalid number of threads: " + argv[i]);
 					System.exit(1);
 				}
+			} else if (argv[i].equals("--seed")) {
+				i++;
+				if (i >= argv.length) {
+					System.err.println("Please specify a seed.");
+					System.exit(1);
+				}
+				try {
+					opts.seed = Long.valueOf(argv[i]);
+				} catch (NumberFormatException nfx) {
+					System.err.println("Invalid seed: " + argv[i]);
+					System.exit(1);
+				}
 			} else if (argv[i].equals("--generate")) {
 				opts.action = Action.GENERATE;
 				opts.printPuzzle = true;
@@ -106,10 +142,66 @@ class QQWingMain {
 				}
 				opts.difficulty = Difficulty.get(argv[i + 1]);
 				if (opts.difficulty == null){
-					System.err.println("Difficulty expected to be simple, easy, intermediate, expert, or any, not " + argv[i + 1]);
+					System.err.println("Difficulty expected to be simple, easy, intermediate, hard, expert, or any, not " + argv[i + 1]);
+					System.exit(1);
+				}
+				i++;
+			} else if (argv[i].equals("--quota")) {
+				if (argv.length <= i + 1) {
+					System.err.println("Please specify a quota.");
+					System.exit(1);
+				}
+				opts.quota = parseQuota(argv[i + 1]);
+				if (opts.quota == null) {
+					System.err.println("Quota expected to be a list like simple=10,easy=10,expert=5, not " + argv[i + 1]);
+					System.exit(1);
+				}
+				opts.action = Action.GENERATE;
+				opts.printPuzzle = true;
+				i++;
+			} else if (argv[i].equals("--quota-dir")) {
+				if (argv.length <= i + 1) {
+					System.err.println("Please specify a directory.");
 					System.exit(1);
 				}
+				opts.quotaDir = argv[i + 1];
+				i++;
+			} else if (argv[i].equals("--dedup")) {
+				opts.dedup = true;
+			} else if (argv[i].equals("--nodedup")) {
+				opts.dedup = false;
+				opts.dedupBloomMegabytes = 0;
+			} else if (argv[i].equals("--dedup-bloom")) {
 				i++;
+				if (i >= argv.length) {
+					System.err.println("Please specify a size in megabytes.");
+					System.exit(1);
+				}
+				try {
+					opts.dedupBloomMegabytes = Integer.parseInt(argv[i]);
+				} catch (NumberFormatException nfx) {
+					opts.dedupBloomMegabytes = 0;
+				}
+				if (opts.dedupBloomMegabytes <= 0) {
+					System.err.println("Bad size for the duplicate filter: " + argv[i]);
+					System.exit(1);
+				}
+				opts.dedup = true;
+			} else if (argv[i].equals("--expand")) {
+				i++;
+				if (i >= argv.length) {
+					System.err.println("Please specify a number of copies.");
+					System.exit(1);
+				}
+				try {
+					opts.expand = Integer.parseInt(argv[i]);
+				} catch (NumberFormatException nfx) {
+					opts.expand = 0;
+				}
+				if (opts.expand <= 0) {
+					System.err.println("Bad number of copies to expand to: " + argv[i]);
+					System.exit(1);
+				}
 			} else if (argv[i].equals("--symmetry")) {
 				if (argv.length <= i + 1) {
 					System.err.println("Please specify a symmetry.");
@@ -121,6 +213,17 @@ class QQWingMain {
 					System.exit(1);
 				}
 				i++;
+			} else if (argv[i].equals("--restarts")) {
+				if (argv.length <= i + 1) {
+					System.err.println("Please specify a restart strategy.");
+					System.exit(1);
+				}
+				opts.restartStrategy = RestartStrategy.get(argv[i + 1]);
+				if (opts.restartStrategy == null){
+					System.err.println("Restart strategy expected to be none, luby, or geometric, not " + argv[i + 1]);
+					System.exit(1);
+				}
+				i++;
 			} else if (argv[i].equals("--solve")) {
 				opts.action = Action.SOLVE;
 				opts.printSolution = true;
@@ -166,22 +269,61 @@ class QQWingMain {
 			System.exit(1);
 		}
 
+		// When generating to a quota, each difficulty
+		// gets its own output file.
+		final Map<Difficulty, PrintStream> quotaOutputs = new EnumMap<Difficulty, PrintStream>(Difficulty.class);
+		if (opts.quota != null) {
+			for (Difficulty difficulty : Difficulty.values()) {
+				if (opts.quota.getQuota(difficulty) > 0) {
+					File file = new File(opts.quotaDir, difficulty.getName().toLowerCase(Locale.ENGLISH) + (opts.printStyle == PrintStyle.CSV ? ".csv" : ".txt"));
+					try {
+						quotaOutputs.put(difficulty, new PrintStream(new FileOutputStream(file), true));
+					} catch (IOException iox) {
+						System.err.println("Could not open " + file + ": " + iox.getMessage());
+						System.exit(1);
+					}
+				}
+			}
+		}
+
 		// If printing out CSV, print a header
 		if (opts.printStyle == PrintStyle.CSV) {
-			if (opts.printPuzzle) System.out.print("Puzzle,");
-			if (opts.printSolution) System.out.print("Solution,");
-			if (opts.printHistory) System.out.print("Solve History,");
-			if (opts.printInstructions) System.out.print("Solve Instructions,");
-			if (opts.countSolutions) System.out.print("Solution Count,");
-			if (opts.timer) System.out.print("Time (milliseconds),");
-			if (opts.printStats) System.out.print("Givens,Singles,Hidden Singles,Naked Pairs,Hidden Pairs,Pointing Pairs/Triples,Box/Line Intersections,Guesses,Backtracks,Difficulty");
-			System.out.println("");
+			if (opts.quota == null) {
+				printCsvHeader(System.out, opts);
+			} else {
+				for (PrintStream out : quotaOutputs.values()) {
+					printCsvHeader(out, opts);
+				}
+			}
+		}
+
+		// The puzzles generated so far, when
+		// suppressing duplicates.
+		final HashFilter seen;
+		if (opts.dedupBloomMegabytes > 0) {
+			seen = new BloomFilter(opts.dedupBloomMegabytes * 8L * 1024 * 1024);
+		} else if (opts.dedup) {
+			seen = new StripedLongSet();
+		} else {
+			seen = null;
 		}
 
-		// The number of puzzles solved or generated.
+		// The number of puzzles solved.
 		final AtomicInteger puzzleCount = new AtomicInteger(0);
 		final AtomicBoolean done = new AtomicBoolean(false);
 
+		// The number of the next puzzle to generate, and the output
+		// for the puzzles generated, printed in number order.
+		final AtomicInteger nextPuzzle = new AtomicInteger(0);
+		final OrderedOutput orderedOutput = new OrderedOutput();
+
+		// Everything random comes from one root generator, so that a seed
+		// reproduces it all. Each generated puzzle gets its own seed from
+		// its number, so the puzzles don't depend on which thread makes
+		// them.
+		final SplittableRandom random = opts.seed == null ? new SplittableRandom() : new SplittableRandom(opts.seed.longValue());
+		final long puzzleSeed = random.nextLong();
+
 		Thread[] threads = new Thread[opts.threads];
 		for (int threadCount = 0; threadCount < threads.length; threadCount++) {
 			threads[threadCount] = new Thread(
@@ -191,11 +333,16 @@ class QQWingMain {
 					// and set the options
 					private QQWing ss = createQQWing();
 
+					// The number of the puzzle being generated, or -1
+					// when it is time to start the next one.
+					private int puzzleNumber = -1;
+
 					private QQWing createQQWing() {
-						QQWing ss = new QQWing();
-						ss.setRecordHistory(opts.printHistory || opts.printInstructions || opts.printStats || opts.difficulty != Difficulty.UNKNOWN);
+						QQWing ss = new QQWing(random.nextLong());
+						ss.setRecordHistory(opts.printHistory || opts.printInstructions);
 						ss.setLogHistory(opts.logHistory);
 						ss.setPrintStyle(opts.printStyle);
+						ss.setRestartStrategy(opts.restartStrategy);
 						return ss;
 					}
 
@@ -220,11 +367,49 @@ class QQWingMain {
 								// givens.
 								boolean havePuzzle = false;
 
-								if (opts.action == Action.GENERATE) {
-									// Generate a puzzle
-									havePuzzle = ss.generatePuzzleSymmetry(opts.symmetry);
+								// The quota bucket that the puzzle fills, if
+								// generating to a quota.
+								Difficulty bucket = null;
 
-									if (!havePuzzle && opts.printPuzzle) {
+								// The number of copies of the puzzle to print.
+								int copies = (opts.expand > 0) ? opts.expand : 1;
+
+								if (opts.quota != null) {
+									// Generate a puzzle, giving up on rating it
+									// as soon as it turns out to be harder than
+									// any bucket that still needs puzzles
+									Difficulty rating = ss.generateRatedPuzzle(opts.symmetry, opts.quota.getHardestOpen());
+									if (opts.quota.getQuota(rating) > 0 && isNewPuzzle(ss, seen)) {
+										copies = opts.quota.claim(rating, copies);
+									} else {
+										copies = 0;
+									}
+									if (copies > 0) {
+										havePuzzle = true;
+										bucket = rating;
+									}
+									if (opts.quota.isFull()) done.set(true);
+								} else if (opts.action == Action.GENERATE) {
+									// Start the next puzzle, if the last one
+									// is done, or stop once they all have
+									// been started
+									if (puzzleNumber < 0) {
+										puzzleNumber = nextPuzzle.getAndIncrement();
+										if (puzzleNumber >= opts.numberToGenerate) break;
+										ss.setSeed(puzzleSeed + puzzleNumber * PUZZLE_SEED_GAMMA);
+									}
+
+									// Generate a puzzle, giving up on it as
+									// soon as it turns out not to meet the
+									// difficulty standards for generation
+									havePuzzle = ss.generatePuzzle(opts.symmetry, opts.difficulty);
+
+									// Try again, without counting it, if the
+									// puzzle has been generated before
+									boolean duplicate = havePuzzle && !isNewPuzzle(ss, seen);
+									if (duplicate) havePuzzle = false;
+
+									if (!havePuzzle && !duplicate && opts.difficulty == Difficulty.UNKNOWN && opts.printPuzzle) {
 										output.append("Could not generate puzzle.");
 										if (opts.printStyle == PrintStyle.CSV) {
 											output.append(",").append(NL);
@@ -273,24 +458,10 @@ class QQWingMain {
 									}
 
 									// Solve the puzzle
-									if (opts.printSolution || opts.printHistory || opts.printStats || opts.printInstructions || opts.difficulty != Difficulty.UNKNOWN) {
+									if (opts.printSolution || opts.printHistory || opts.printStats || opts.printInstructions) {
 										ss.solve();
 									}
 
-									// Bail out if it didn't meet the difficulty
-									// standards for generation
-									if (opts.action == Action.GENERATE) {
-										if (opts.difficulty != Difficulty.UNKNOWN && opts.difficulty != ss.getDifficulty()) {
-											havePuzzle = false;
-											// check if other threads have
-											// finished the job
-											if (puzzleCount.get() >= opts.numberToGenerate) done.set(true);
-										} else {
-											int numDone = puzzleCount.incrementAndGet();
-											if (numDone >= opts.numberToGenerate) done.set(true);
-											if (numDone > opts.numberToGenerate) havePuzzle = false;
-										}
-									}
 								}
 
 								// Check havePuzzle again, it may have changed
@@ -302,94 +473,38 @@ class QQWingMain {
 									// Record the end time for the timer.
 									long puzzleDoneTime = getMicroseconds();
 
-									// Print the puzzle itself.
-									if (opts.printPuzzle) output.append(ss.getPuzzleString());
-
-									// Print the solution if there is one
-									if (opts.printSolution) {
-										if (ss.isSolved()) {
-											output.append(ss.getSolutionString());
-										} else {
-											output.append("Puzzle has no solution.");
-											if (opts.printStyle == PrintStyle.CSV) {
-												output.append(",");
-											} else {
-												output.append(NL);
-											}
-										}
-									}
-
-									// Print the steps taken to solve or attempt
-									// to solve the puzzle.
-									if (opts.printHistory) output.append(ss.getSolveHistoryString());
-									// Print the instructions for solving the
-									// puzzle
-									if (opts.printInstructions) output.append(ss.getSolveInstructionsString());
-
-									// Print the number of solutions to the
-									// puzzle.
-									if (opts.countSolutions) {
-										if (opts.printStyle == PrintStyle.CSV) {
-											output.append(solutions + ",");
-										} else {
-											if (solutions == 0) {
-												output.append("There are no solutions to the puzzle.").append(NL);
-											} else if (solutions == 1) {
-												output.append("The solution to the puzzle is unique.").append(NL);
-											} else {
-												output.append("There are " + solutions + " solutions to the puzzle.").append(NL);
+									// Print the puzzle, or rearranged copies
+									// of it when expanding.
+									Set<String> printed = new HashSet<String>();
+									for (int copy = 0; copy < copies; copy++) {
+										if (opts.expand > 0) {
+											// Skip any copies that come out the same
+											int attempts = 0;
+											boolean isNew;
+											do {
+												ss.transformToRandomIsomorph();
+												attempts++;
+												isNew = printed.add(ss.getPuzzleString());
+											} while (!isNew && attempts < MAX_EXPAND_ATTEMPTS);
+											if (!isNew) {
+												System.err.println("Only found " + copy + " different rearrangements of a puzzle, not " + copies + ".");
+												break;
 											}
 										}
-									}
-
-									// Print out the time it took to solve the
-									// puzzle.
-									if (opts.timer) {
-										double t = ((double) (puzzleDoneTime - puzzleStartTime)) / 1000.0;
-										if (opts.printStyle == PrintStyle.CSV) {
-											output.append(t + ",");
-										} else {
-											output.append("Time: " + t + " milliseconds").append(NL);
-										}
-									}
-
-									// Print any stats we were able to gather
-									// while solving the puzzle.
-									if (opts.printStats) {
-										int givenCount = ss.getGivenCount();
-										int singleCount = ss.getSingleCount();
-										int hiddenSingleCount = ss.getHiddenSingleCount();
-										int nakedPairCount = ss.getNakedPairCount();
-										int hiddenPairCount = ss.getHiddenPairCount();
-										int pointingPairTripleCount = ss.getPointingPairTripleCount();
-										int boxReductionCount = ss.getBoxLineReductionCount();
-										int guessCount = ss.getGuessCount();
-										int backtrackCount = ss.getBacktrackCount();
-										String difficultyString = ss.getDifficultyAsString();
-										if (opts.printStyle == PrintStyle.CSV) {
-											output.append(givenCount).append(",").append(singleCount).append(",")
-												.append(hiddenSingleCount).append(",").append(nakedPairCount)
-												.append(",").append(hiddenPairCount).append(",")
-												.append(pointingPairTripleCount).append(",").append(boxReductionCount)
-												.append(",").append(guessCount).append(",").append(backtrackCount)
-												.append(",").append(difficultyString).append(",");
-										} else {
-											output.append("Number of Givens: ").append(givenCount).append(NL);
-											output.append("Number of Singles: ").append(singleCount).append(NL);
-											output.append("Number of Hidden Singles: ").append(hiddenSingleCount).append(NL);
-											output.append("Number of Naked Pairs: ").append(nakedPairCount).append(NL);
-											output.append("Number of Hidden Pairs: ").append(hiddenPairCount).append(NL);
-											output.append("Number of Pointing Pairs/Triples: ").append(pointingPairTripleCount).append(NL);
-											output.append("Number of Box/Line Intersections: ").append(boxReductionCount).append(NL);
-											output.append("Number of Guesses: ").append(guessCount).append(NL);
-											output.append("Number of Backtracks: ").append(backtrackCount).append(NL);
-											output.append("Difficulty: ").append(difficultyString).append(NL);
-										}
+										if (copy > 0 && opts.printStyle == PrintStyle.CSV) output.append(NL);
+										appendPuzzle(output, ss, opts, solutions, puzzleDoneTime - puzzleStartTime);
 									}
 								}
-								if (output.length() > 0) {
-									if (opts.printStyle == PrintStyle.CSV) output.append(NL);
-									System.out.print(output);
+								if (output.length() > 0 && opts.printStyle == PrintStyle.CSV) output.append(NL);
+								if (havePuzzle && opts.quota == null && opts.action == Action.GENERATE) {
+									orderedOutput.print(puzzleNumber, output);
+									puzzleNumber = -1;
+								} else if (output.length() > 0) {
+									if (bucket != null) {
+										quotaOutputs.get(bucket).print(output);
+									} else {
+										System.out.print(output);
+									}
 								}
 							}
 						} catch (Exception e) {
@@ -417,11 +532,177 @@ class QQWingMain {
 		if (opts.timer) {
 			double t = ((double) (applicationDoneTime - applicationStartTime)) / 1000000.0;
 			int count = opts.action == Action.GENERATE ? opts.numberToGenerate : puzzleCount.get();
+			if (opts.action == Action.GENERATE && opts.expand > 0) count *= opts.expand;
+			if (opts.quota != null) count = opts.quota.getTotal();
 			System.out.println(count + " puzzle" + ((count == 1) ? "" : "s") + " " + (opts.action == Action.GENERATE ? "generated" : "solved") + " in " + t + " seconds.");
 		}
+		for (PrintStream out : quotaOutputs.values()) {
+			out.close();
+		}
 		System.exit(0);
 	}
 
+	private static void printCsvHeader(PrintStream out, QQWingOptions opts) {
+		if (opts.printPuzzle) out.print("Puzzle,");
+		if (opts.printSolution) out.print("Solution,");
+		if (opts.printHistory) out.print("Solve History,");
+		if (opts.printInstructions) out.print("Solve Instructions,");
+		if (opts.countSolutions) out.print("Solution Count,");
+		if (opts.timer) out.print("Time (milliseconds),");
+		if (opts.printStats) out.print("Givens,Singles,Hidden Singles,Naked Pairs,Hidden Pairs,Pointing Pairs/Triples,Box/Line Intersections,Guesses,Backtracks,Difficulty,Naked Triples,Hidden Triples,Naked Quads,Hidden Quads,X-Wings,Swordfish,XY-Wings");
+		if (opts.printStats && opts.restartStrategy != RestartStrategy.NONE) out.print(",Restarts");
+		out.println("");
+	}
+
+	/**
+	 * Parse a quota such as simple=10,easy=10,expert=5
+	 *
+	 * @return The quota, or null if it could not be parsed
+	 */
+	private static DifficultyQuota parseQuota(String s) {
+		DifficultyQuota quota = new DifficultyQuota();
+		for (String part : s.split(",")) {
+			int equals = part.indexOf('=');
+			if (equals < 0) return null;
+			Difficulty difficulty = Difficulty.get(part.substring(0, equals));
+			if (difficulty == null || difficulty == Difficulty.UNKNOWN) return null;
+			int count;
+			try {
+				count = Integer.parseInt(part.substring(equals + 1));
+			} catch (NumberFormatException nfx) {
+				return null;
+			}
+			if (count < 0) return null;
+			quota.setQuota(difficulty, count);
+		}
+		if (quota.isFull()) return null;
+		return quota;
+	}
+
+	/**
+	 * Append the puzzle and whatever else the options ask for about it: the
+	 * solution, history, instructions, solution count, time, and stats.
+	 */
+	private static void appendPuzzle(StringBuilder output, QQWing ss, QQWingOptions opts, int solutions, long puzzleTime) {
+		// Print the puzzle itself.
+		if (opts.printPuzzle) output.append(ss.getPuzzleString());
+
+		// Print the solution if there is one
+		if (opts.printSolution) {
+			if (ss.isSolved()) {
+				output.append(ss.getSolutionString());
+			} else {
+				output.append("Puzzle has no solution.");
+				if (opts.printStyle == PrintStyle.CSV) {
+					output.append(",");
+				} else {
+					output.append(NL);
+				}
+			}
+		}
+
+		// Print the steps taken to solve or attempt
+		// to solve the puzzle.
+		if (opts.printHistory) output.append(ss.getSolveHistoryString());
+		// Print the instructions for solving the
+		// puzzle
+		if (opts.printInstructions) output.append(ss.getSolveInstructionsString());
+
+		// Print the number of solutions to the
+		// puzzle.
+		if (opts.countSolutions) {
+			if (opts.printStyle == PrintStyle.CSV) {
+				output.append(solutions + ",");
+			} else {
+				if (solutions == 0) {
+					output.append("There are no solutions to the puzzle.").append(NL);
+				} else if (solutions == 1) {
+					output.append("The solution to the puzzle is unique.").append(NL);
+				} else {
+					output.append("There are " + solutions + " solutions to the puzzle.").append(NL);
+				}
+			}
+		}
+
+		// Print out the time it took to solve the
+		// puzzle.
+		if (opts.timer) {
+			double t = ((double) puzzleTime) / 1000.0;
+			if (opts.printStyle == PrintStyle.CSV) {
+				output.append(t + ",");
+			} else {
+				output.append("Time: " + t + " milliseconds").append(NL);
+			}
+		}
+
+		// Print any stats we were able to gather
+		// while solving the puzzle.
+		if (opts.printStats) {
+			int givenCount = ss.getGivenCount();
+			int singleCount = ss.getSingleCount();
+			int hiddenSingleCount = ss.getHiddenSingleCount();
+			int nakedPairCount = ss.getNakedPairCount();
+			int hiddenPairCount = ss.getHiddenPairCount();
+			int pointingPairTripleCount = ss.getPointingPairTripleCount();
+			int boxReductionCount = ss.getBoxLineReductionCount();
+			int nakedTripleCount = ss.getNakedTripleCount();
+			int hiddenTripleCount = ss.getHiddenTripleCount();
+			int nakedQuadCount = ss.getNakedQuadCount();
+			int hiddenQuadCount = ss.getHiddenQuadCount();
+			int xWingCount = ss.getXWingCount();
+			int swordfishCount = ss.getSwordfishCount();
+			int xyWingCount = ss.getXYWingCount();
+			int guessCount = ss.getGuessCount();
+			int backtrackCount = ss.getBacktrackCount();
+			String difficultyString = ss.getDifficultyAsString();
+			if (opts.printStyle == PrintStyle.CSV) {
+				output.append(givenCount).append(",").append(singleCount).append(",")
+					.append(hiddenSingleCount).append(",").append(nakedPairCount)
+					.append(",").append(hiddenPairCount).append(",")
+					.append(pointingPairTripleCount).append(",").append(boxReductionCount)
+					.append(",").append(guessCount).append(",").append(backtrackCount)
+					.append(",").append(difficultyString).append(",");
+				// Columns added after the original ones go at the end
+				output.append(nakedTripleCount).append(",").append(hiddenTripleCount)
+					.append(",").append(nakedQuadCount).append(",").append(hiddenQuadCount)
+					.append(",").append(xWingCount).append(",").append(swordfishCount).append(",")
+					.append(xyWingCount).append(",");
+				if (opts.restartStrategy != RestartStrategy.NONE) output.append(ss.getRestartCount()).append(",");
+			} else {
+				output.append("Number of Givens: ").append(givenCount).append(NL);
+				output.append("Number of Singles: ").append(singleCount).append(NL);
+				output.append("Number of Hidden Singles: ").append(hiddenSingleCount).append(NL);
+				output.append("Number of Naked Pairs: ").append(nakedPairCount).append(NL);
+				output.append("Number of Hidden Pairs: ").append(hiddenPairCount).append(NL);
+				output.append("Number of Pointing Pairs/Triples: ").append(pointingPairTripleCount).append(NL);
+				output.append("Number of Box/Line Intersections: ").append(boxReductionCount).append(NL);
+				output.append("Number of Guesses: ").append(guessCount).append(NL);
+				output.append("Number of Backtracks: ").append(backtrackCount).append(NL);
+				output.append("Difficulty: ").append(difficultyString).append(NL);
+				// In the same order as the CSV columns
+				output.append("Number of Naked Triples: ").append(nakedTripleCount).append(NL);
+				output.append("Number of Hidden Triples: ").append(hiddenTripleCount).append(NL);
+				output.append("Number of Naked Quads: ").append(nakedQuadCount).append(NL);
+				output.append("Number of Hidden Quads: ").append(hiddenQuadCount).append(NL);
+				output.append("Number of X-Wings: ").append(xWingCount).append(NL);
+				output.append("Number of Swordfish: ").append(swordfishCount).append(NL);
+				output.append("Number of XY-Wings: ").append(xyWingCount).append(NL);
+				if (opts.restartStrategy != RestartStrategy.NONE) output.append("Number of Restarts: ").append(ss.getRestartCount()).append(NL);
+			}
+		}
+	}
+
+	/**
+	 * Whether the puzzle hasn't been seen before, or any rearrangement of it.
+	 * Records it as seen.
+	 *
+	 * @param seen The puzzles seen so far, or null when not suppressing
+	 *        duplicates
+	 */
+	private static boolean isNewPuzzle(QQWing ss, HashFilter seen) {
+		return seen == null || seen.add(ss.getCanonicalHash());
+	}
+
 	private static boolean isAlive(Thread[] threads) {
 		for (int i = 0; i < threads.length; i++) {
 			if (threads[i].isAlive()) return true;
@@ -434,6 +715,25 @@ class QQWingMain {
 	}
 
 
+	/**
+	 * Prints the output for numbered puzzles in number order, holding on to
+	 * any that finish before the ones ahead of them.
+	 */
+	private static final class OrderedOutput {
+
+		private final Map<Integer, CharSequence> waiting = new HashMap<Integer, CharSequence>();
+
+		private int next = 0;
+
+		synchronized void print(int number, CharSequence output) {
+			waiting.put(number, output);
+			for (CharSequence ready = waiting.remove(next); ready != null; ready = waiting.remove(next)) {
+				System.out.print(ready);
+				next++;
+			}
+		}
+	}
+
 	private static class QQWingOptions {
 		// defaults for options
 		boolean printPuzzle = false;
@@ -462,6 +762,20 @@ class QQWingMain {
 
 		Symmetry symmetry = Symmetry.NONE;
 
+		DifficultyQuota quota = null;
+
+		String quotaDir = ".";
+
+		Long seed = null;
+
+		RestartStrategy restartStrategy = RestartStrategy.NONE;
+
+		int expand = 0;
+
+		boolean dedup = false;
+
+		int dedupBloomMegabytes = 0;
+
 		int threads = Runtime.getRuntime().availableProcessors();
 	}
 
@@ -491,7 +805,13 @@ class QQWingMain {
 		System.out.println("Sudoku solver and generator.");
 		System.out.println("  --generate <num>     Generate new puzzles");
 		System.out.println("  --solve              Solve all the puzzles from standard input");
-		System.out.println("  --difficulty <diff>  Generate only simple, easy, intermediate, expert, or any");
+		System.out.println("  --difficulty <diff>  Generate only simple, easy, intermediate, hard, expert, or any");
+		System.out.println("  --dedup              Skip generated puzzles that are rearrangements of earlier ones");
+		System.out.println("  --nodedup            Do not check for duplicate puzzles (default)");
+		System.out.println("  --dedup-bloom <mb>   Check for duplicates in a fixed size filter, some false hits");
+		System.out.println("  --expand <num>       Print rearranged copies of each puzzle, with the same stats");
+		System.out.println("  --quota <quotas>     Generate to a quota per difficulty, eg simple=10,expert=5");
+		System.out.println("  --quota-dir <dir>    Directory for the per difficulty quota files (default .)");
 		System.out.println("  --symmetry <sym>     Symmetry: none, rotate90, rotate180, mirror, flip, or random");
 		System.out.println("  --puzzle             Print the puzzle (default when generating)");
 		System.out.println("  --nopuzzle           Do not print the puzzle (default when solving)");
@@ -502,6 +822,8 @@ class QQWingMain {
 		System.out.println("  --timer              Print time to generate or solve each puzzle");
 		System.out.println("  --notimer            Do not print solve or generation times (default)");
 		System.out.println("  --threads            Number of processes (default available processors)");
+		System.out.println("  --seed <num>         Seed the random number generator for repeatable output");
+		System.out.println("  --restarts <how>     Restart long solves: none (default), luby, or geometric");
 		System.out.println("  --count-solutions    Count the number of solutions to puzzles");
 		System.out.println("  --nocount-solutions  Do not count the number of solutions (default)");
 		System.out.println("  --history            Print trial and error used when solving");
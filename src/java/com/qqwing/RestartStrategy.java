@@ -0,0 +1,54 @@
+// @formatter:off
+/*
+ * qqwing - Sudoku solver and generator
+ * Copyright (C) 2014 Stephen Ostermiller
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+// @formatter:on
+package com.qqwing;
+
+import java.util.Locale;
+
+/**
+ * How often solve() gives up on a search that is going badly and starts
+ * over with a new random branching order.
+ */
+public enum RestartStrategy {
+	/**
+	 * Never restart.
+	 */
+	NONE,
+	/**
+	 * Restart after a number of backtracks that follows the Luby sequence
+	 * (1, 1, 2, 1, 1, 2, 4, 1, ...) times the base number.
+	 */
+	LUBY,
+	/**
+	 * Restart after the base number of backtracks, growing by half again
+	 * for each restart.
+	 */
+	GEOMETRIC;
+
+	public static RestartStrategy get(String s) {
+		if (s == null) return null;
+		try {
+			s = s.toUpperCase(Locale.ENGLISH);
+			return valueOf(s);
+		} catch (IllegalArgumentException aix) {
+			return null;
+		}
+	}
+}
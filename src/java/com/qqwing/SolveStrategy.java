@@ -0,0 +1,48 @@
+// @formatter:off
+/*
+ * qqwing - Sudoku solver and generator
+ * Copyright (C) 2014 Stephen Ostermiller
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+// @formatter:on
+package com.qqwing;
+
+/**
+ * A technique that QQWing can use to make progress on a puzzle without
+ * guessing. The solver tries its strategies in order, starting over from the
+ * first one after each one that makes a move, and guesses once none of them
+ * can. The techniques are the constants of SolveTechnique, which is what
+ * the public API takes.
+ */
+interface SolveStrategy {
+
+	/**
+	 * Make a single move (marking a cell or removing possibilities) on the
+	 * board, if this strategy can find one.
+	 *
+	 * @param qqwing The board being solved
+	 * @param round Round to record the move in for rollback purposes
+	 * @return true if a move was made
+	 */
+	public boolean apply(QQWing qqwing, int round);
+
+	/**
+	 * The difficulty of a puzzle that can't be solved without this strategy.
+	 * Adaptive ordering only swaps strategies of the same difficulty, so that
+	 * it never changes how puzzles are rated.
+	 */
+	public Difficulty getDifficulty();
+}
@@ -0,0 +1,117 @@
+// @formatter:off
+/*
+ * qqwing - Sudoku solver and generator
+ * Copyright (C) 2014 Stephen Ostermiller
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+// @formatter:on
+package com.qqwing;
+
+/**
+ * The solving techniques built in to QQWing, in the order that they are
+ * tried by default.
+ */
+public enum SolveTechnique implements SolveStrategy {
+	SINGLE(Difficulty.SIMPLE) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.single(round);
+		}
+	},
+	HIDDEN_SINGLE(Difficulty.EASY) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.hiddenSingle(round);
+		}
+	},
+	NAKED_PAIR(Difficulty.INTERMEDIATE) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.nakedSubset(round, 2);
+		}
+	},
+	POINTING_PAIR_TRIPLE(Difficulty.INTERMEDIATE) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.pointingPairTriple(round);
+		}
+	},
+	BOX_LINE_REDUCTION(Difficulty.INTERMEDIATE) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.boxLineReduction(round);
+		}
+	},
+	HIDDEN_PAIR(Difficulty.INTERMEDIATE) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.hiddenSubset(round, 2);
+		}
+	},
+	NAKED_TRIPLE(Difficulty.INTERMEDIATE) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.nakedSubset(round, 3);
+		}
+	},
+	HIDDEN_TRIPLE(Difficulty.INTERMEDIATE) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.hiddenSubset(round, 3);
+		}
+	},
+	NAKED_QUAD(Difficulty.INTERMEDIATE) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.nakedSubset(round, 4);
+		}
+	},
+	HIDDEN_QUAD(Difficulty.INTERMEDIATE) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.hiddenSubset(round, 4);
+		}
+	},
+	X_WING(Difficulty.HARD) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.fish(round, 2);
+		}
+	},
+	SWORDFISH(Difficulty.HARD) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.fish(round, 3);
+		}
+	},
+	XY_WING(Difficulty.HARD) {
+		@Override
+		public boolean apply(QQWing qqwing, int round) {
+			return qqwing.xyWing(round);
+		}
+	};
+
+	private final Difficulty difficulty;
+
+	private SolveTechnique(Difficulty difficulty) {
+		this.difficulty = difficulty;
+	}
+
+	@Override
+	public Difficulty getDifficulty() {
+		return difficulty;
+	}
+}
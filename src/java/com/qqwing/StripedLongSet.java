@@ -0,0 +1,89 @@
+// @formatter:off
+/*
+ * qqwing - Sudoku solver and generator
+ * Copyright (C) 2014 Stephen Ostermiller
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+// @formatter:on
+package com.qqwing;
+
+/**
+ * An exact set of 64 bit hashes that many threads can add to at once. The
+ * hashes are spread over many stripes by their high bits, each an open
+ * addressing table with its own lock, so threads rarely wait on each other.
+ * Memory grows with the number of hashes.
+ */
+final class StripedLongSet implements HashFilter {
+
+	private static final int STRIPE_BITS = 8;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+	StripedLongSet() {
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	@Override public boolean add(long hash) {
+		// Zero marks an empty slot, so store it as one. The chance of a
+		// real collision between the two is negligible.
+		if (hash == 0) hash = 1;
+		Stripe stripe = stripes[(int) (hash >>> (64 - STRIPE_BITS))];
+		synchronized (stripe) {
+			return stripe.add(hash);
+		}
+	}
+
+	/**
+	 * One table of hashes with linear probing, kept at most half full.
+	 */
+	private static final class Stripe {
+
+		private long[] slots = new long[INITIAL_CAPACITY];
+
+		private int size = 0;
+
+		boolean add(long hash) {
+			int mask = slots.length - 1;
+			int i = (int) hash & mask;
+			while (slots[i] != 0) {
+				if (slots[i] == hash) return false;
+				i = (i + 1) & mask;
+			}
+			slots[i] = hash;
+			size++;
+			if (size * 2 > slots.length) grow();
+			return true;
+		}
+
+		private void grow() {
+			long[] old = slots;
+			slots = new long[old.length * 2];
+			int mask = slots.length - 1;
+			for (long hash : old) {
+				if (hash == 0) continue;
+				int i = (int) hash & mask;
+				while (slots[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				slots[i] = hash;
+			}
+		}
+	}
+}
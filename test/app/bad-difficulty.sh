@@ -19,7 +19,14 @@
 set -e
 set -o pipefail
 
-expected="Difficulty expected to be simple, easy, intermediate, expert, or any, not foo"
+# The Java version also has a hard difficulty
+difficulties="simple, easy, intermediate, expert"
+if [ "$QQWINGTESTTYPE" = "java" ]
+then
+	difficulties="simple, easy, intermediate, hard, expert"
+fi
+
+expected="Difficulty expected to be $difficulties, or any, not foo"
 actual=`$QQWING --difficulty foo 2>&1 || true`
 
 if [ "$expected" != "$actual" ]
@@ -0,0 +1,41 @@
+#!/bin/sh
+# qqwing - Sudoku solver and generator
+# Copyright (C) 2014 Stephen Ostermiller
+#
+# This program is free software; you can redistribute it and/or modify
+# it under the terms of the GNU General Public License as published by
+# the Free Software Foundation; either version 2 of the License, or
+# (at your option) any later version.
+#
+# This program is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+#
+# You should have received a copy of the GNU General Public License along
+# with this program; if not, write to the Free Software Foundation, Inc.,
+# 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+set -e
+set -o pipefail
+
+# Only the Java version suppresses duplicates
+if [ "$QQWINGTESTTYPE" != "java" ]
+then
+	exit 0
+fi
+
+for dedup in "--dedup" "--dedup-bloom 1"
+do
+	puzzles=`$QQWING --generate 50 --one-line --threads 4 $dedup`
+	count=`echo "$puzzles" | grep -cE "^[0-9\.]{81}$" || true`
+	repeated=`echo "$puzzles" | sort | uniq -d`
+	if [ "$count" != "50" ] || [ "$repeated" != "" ]
+	then
+		echo
+		echo "Test: $0"
+		echo "qqwing: $QQWING"
+		echo "Expected 50 different puzzles with $dedup on four threads"
+		echo "$puzzles"
+		exit 1
+	fi
+done
@@ -0,0 +1,53 @@
+#!/bin/sh
+# qqwing - Sudoku solver and generator
+# Copyright (C) 2014 Stephen Ostermiller
+#
+# This program is free software; you can redistribute it and/or modify
+# it under the terms of the GNU General Public License as published by
+# the Free Software Foundation; either version 2 of the License, or
+# (at your option) any later version.
+#
+# This program is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+#
+# You should have received a copy of the GNU General Public License along
+# with this program; if not, write to the Free Software Foundation, Inc.,
+# 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+set -e
+set -o pipefail
+
+# Only the Java version can expand puzzles
+if [ "$QQWINGTESTTYPE" != "java" ]
+then
+	exit 0
+fi
+
+output=`$QQWING --generate 2 --expand 3 --one-line --stats --csv | tail -n +2`
+
+if [ `echo "$output" | wc -l` != 6 ] || [ `echo "$output" | cut -d, -f1 | sort -u | wc -l` != 6 ]
+then
+	echo
+	echo "Test: $0"
+	echo "qqwing: $QQWING"
+	echo "Expected six different puzzles"
+	echo "$output"
+	exit 1
+fi
+
+if [ `echo "$output" | cut -d, -f2- | uniq | wc -l` -gt 2 ]
+then
+	echo
+	echo "Test: $0"
+	echo "qqwing: $QQWING"
+	echo "Expected each copy of a puzzle to have the same stats"
+	echo "$output"
+	exit 1
+fi
+
+for puzzle in `echo "$output" | cut -d, -f1`
+do
+	./test/app/helper/generate.sh $0 "" "$puzzle"
+done
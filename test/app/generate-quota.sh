@@ -0,0 +1,60 @@
+#!/bin/sh
+# qqwing - Sudoku solver and generator
+# Copyright (C) 2014 Stephen Ostermiller
+#
+# This program is free software; you can redistribute it and/or modify
+# it under the terms of the GNU General Public License as published by
+# the Free Software Foundation; either version 2 of the License, or
+# (at your option) any later version.
+#
+# This program is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+#
+# You should have received a copy of the GNU General Public License along
+# with this program; if not, write to the Free Software Foundation, Inc.,
+# 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+set -e
+set -o pipefail
+
+# Only the Java version has quotas
+if [ "$QQWINGTESTTYPE" != "java" ]
+then
+	exit 0
+fi
+
+dir=`mktemp -d /tmp/quota.XXXXXXXXX`
+$QQWING --quota simple=2,expert=3 --quota-dir "$dir" --one-line --stats --csv
+
+for difficulty in simple:Simple:2 expert:Expert:3
+do
+	file="$dir/`echo $difficulty | cut -d: -f1`.csv"
+	name=`echo $difficulty | cut -d: -f2`
+	count=`echo $difficulty | cut -d: -f3`
+	actual=`grep -cE "^[0-9\.]{81},.*,$name,([0-9]+,)*$" "$file" || true`
+	if [ "$actual" != "$count" ]
+	then
+		echo
+		echo "Test: $0"
+		echo "qqwing: $QQWING"
+		echo "Expected $count $name puzzles in $file, found $actual"
+		cat "$file"
+		rm -rf "$dir"
+		exit 1
+	fi
+done
+
+if [ `ls "$dir" | wc -l` != 2 ]
+then
+	echo
+	echo "Test: $0"
+	echo "qqwing: $QQWING"
+	echo "Expected only simple and expert quota files"
+	ls "$dir"
+	rm -rf "$dir"
+	exit 1
+fi
+
+rm -rf "$dir"
@@ -0,0 +1,57 @@
+#!/bin/sh
+# qqwing - Sudoku solver and generator
+# Copyright (C) 2014 Stephen Ostermiller
+#
+# This program is free software; you can redistribute it and/or modify
+# it under the terms of the GNU General Public License as published by
+# the Free Software Foundation; either version 2 of the License, or
+# (at your option) any later version.
+#
+# This program is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+#
+# You should have received a copy of the GNU General Public License along
+# with this program; if not, write to the Free Software Foundation, Inc.,
+# 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+set -e
+set -o pipefail
+
+# Only the Java version has seeds
+if [ "$QQWINGTESTTYPE" != "java" ]
+then
+	exit 0
+fi
+
+first=`$QQWING --generate 5 --one-line --threads 1 --seed 12345`
+second=`$QQWING --generate 5 --one-line --threads 1 --seed 12345`
+
+if [ "$first" != "$second" ]
+then
+	echo
+	echo "Test: $0"
+	echo "qqwing: $QQWING"
+	echo "Expected the same puzzles from the same seed"
+	echo "$first"
+	echo "$second"
+	exit 1
+fi
+
+# The puzzles don't depend on which thread generates them
+first=`$QQWING --generate 20 --one-line --stats --csv --threads 4 --seed 12345`
+second=`$QQWING --generate 20 --one-line --stats --csv --threads 4 --seed 12345`
+third=`$QQWING --generate 20 --one-line --stats --csv --threads 1 --seed 12345`
+
+if [ "$first" != "$second" ] || [ "$first" != "$third" ]
+then
+	echo
+	echo "Test: $0"
+	echo "qqwing: $QQWING"
+	echo "Expected the same puzzles from the same seed with any number of threads"
+	echo "$first"
+	echo "$second"
+	echo "$third"
+	exit 1
+fi
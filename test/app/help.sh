@@ -19,12 +19,32 @@
 set -e
 set -o pipefail
 
+# The Java version also has a hard difficulty, dedup, expansion, quotas,
+# seeds, and restarts
+difficulties="simple, easy, intermediate, expert"
+quotaoptions=""
+seedoption=""
+if [ "$QQWINGTESTTYPE" = "java" ]
+then
+	difficulties="simple, easy, intermediate, hard, expert"
+	quotaoptions="
+  --dedup              Skip generated puzzles that are rearrangements of earlier ones
+  --nodedup            Do not check for duplicate puzzles (default)
+  --dedup-bloom <mb>   Check for duplicates in a fixed size filter, some false hits
+  --expand <num>       Print rearranged copies of each puzzle, with the same stats
+  --quota <quotas>     Generate to a quota per difficulty, eg simple=10,expert=5
+  --quota-dir <dir>    Directory for the per difficulty quota files (default .)"
+	seedoption="
+  --seed <num>         Seed the random number generator for repeatable output
+  --restarts <how>     Restart long solves: none (default), luby, or geometric"
+fi
+
 actual=`$QQWING --help | grep -v threads`
 expected="qqwing <options>
 Sudoku solver and generator.
   --generate <num>     Generate new puzzles
   --solve              Solve all the puzzles from standard input
-  --difficulty <diff>  Generate only simple, easy, intermediate, expert, or any
+  --difficulty <diff>  Generate only $difficulties, or any$quotaoptions
   --symmetry <sym>     Symmetry: none, rotate90, rotate180, mirror, flip, or random
   --puzzle             Print the puzzle (default when generating)
   --nopuzzle           Do not print the puzzle (default when solving)
@@ -33,7 +53,7 @@ Sudoku solver and generator.
   --stats              Print statistics about moves used to solve the puzzle
   --nostats            Do not print statistics (default)
   --timer              Print time to generate or solve each puzzle
-  --notimer            Do not print solve or generation times (default)
+  --notimer            Do not print solve or generation times (default)$seedoption
   --count-solutions    Count the number of solutions to puzzles
   --nocount-solutions  Do not count the number of solutions (default)
   --history            Print trial and error used when solving
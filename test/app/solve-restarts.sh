@@ -0,0 +1,55 @@
+#!/bin/sh
+# qqwing - Sudoku solver and generator
+# Copyright (C) 2014 Stephen Ostermiller
+#
+# This program is free software; you can redistribute it and/or modify
+# it under the terms of the GNU General Public License as published by
+# the Free Software Foundation; either version 2 of the License, or
+# (at your option) any later version.
+#
+# This program is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+#
+# You should have received a copy of the GNU General Public License along
+# with this program; if not, write to the Free Software Foundation, Inc.,
+# 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+set -e
+set -o pipefail
+
+
+# Only the Java version has restarts
+if [ "$QQWINGTESTTYPE" != "java" ]
+then
+	exit 0
+fi
+
+puzzle="1....7.9..3..2...8..96..5....53..9...1..8...26....4...3......1..4......7..7...3.."
+expected="162857493534129678789643521475312986913586742628794135356478219241935867897261354"
+
+for strategy in luby geometric
+do
+	actual=`echo "$puzzle" | $QQWING --solve --one-line --restarts $strategy`
+	if [ "$expected" != "$actual" ]
+	then
+		echo
+		echo "Test: $0"
+		echo "qqwing: $QQWING"
+		echo "Solving with $strategy restarts: $puzzle"
+		echo "Expected: $expected"
+		echo "Actual:   $actual"
+		exit 1
+	fi
+done
+
+restarts=`echo "$puzzle" | $QQWING --solve --stats --restarts luby | grep -c "^Number of Restarts: [0-9]"`
+if [ "$restarts" != "1" ]
+then
+	echo
+	echo "Test: $0"
+	echo "qqwing: $QQWING"
+	echo "Expected the number of restarts in the stats"
+	exit 1
+fi
@@ -19,9 +19,18 @@
 set -e
 set -o pipefail
 
+# The Java version also reports the triple, quad, fish, and wing techniques
+techniqueheaders=""
+techniquecounts=""
+if [ "$QQWINGTESTTYPE" = "java" ]
+then
+	techniqueheaders=",Naked Triples,Hidden Triples,Naked Quads,Hidden Quads,X-Wings,Swordfish,XY-Wings"
+	techniquecounts="0,0,0,0,0,0,0,"
+fi
+
 actual=`echo '9..6...7...1..428.7..2.............81.8....45.9..4.6....7.9.5.....4.5....1..6..29' | $QQWING --solve --csv --log-history --stats`
 
-expected="Solution,Givens,Singles,Hidden Singles,Naked Pairs,Hidden Pairs,Pointing Pairs/Triples,Box/Line Intersections,Guesses,Backtracks,Difficulty
+expected="Solution,Givens,Singles,Hidden Singles,Naked Pairs,Hidden Pairs,Pointing Pairs/Triples,Box/Line Intersections,Guesses,Backtracks,Difficulty${techniqueheaders}
 Round: 1 - Mark given (Row: 1 - Column: 1 - Value: 9)
 Round: 1 - Mark given (Row: 1 - Column: 4 - Value: 6)
 Round: 1 - Mark given (Row: 1 - Column: 8 - Value: 7)
@@ -129,7 +138,7 @@ Round: 2 - Mark only possibility for cell (Row: 8 - Column: 1 - Value: 6)
 Round: 2 - Mark only possibility for cell (Row: 8 - Column: 8 - Value: 3)
 Round: 2 - Mark only possibility for cell (Row: 9 - Column: 1 - Value: 4)
 Round: 2 - Mark only possibility for cell (Row: 9 - Column: 3 - Value: 5)
-982651473351974286746238951274516398168329745593847612837192564629485137415763829,26,36,19,0,0,0,0,0,0,Easy,"
+982651473351974286746238951274516398168329745593847612837192564629485137415763829,26,36,19,0,0,0,0,0,0,Easy,${techniquecounts}"
 
 if [ "$actual" != "$expected" ]
 then
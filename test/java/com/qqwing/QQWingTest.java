@@ -19,6 +19,9 @@
 package com.qqwing;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class QQWingTest {
 
@@ -45,6 +48,31 @@ public class QQWingTest {
 			sectionCellConversion();
 			rowColumnCellConversion();
 			possibilityConversion();
+			solveEasyPuzzle();
+			packedLogItems();
+			undoTrail();
+			incrementalCounters();
+			fewestPossibilities();
+			valuePositionTables();
+			exactCoverCounting();
+			propagateSingles();
+			solveStrategies();
+			nakedTriple();
+			fishAndWings();
+			generateDifficulty();
+			difficultyQuota();
+			seededGeneration();
+			generateFromSolution();
+			solutionPool();
+			isomorphExpansion();
+			canonicalForm();
+			dedupFilters();
+			parallelCounting();
+			parallelGeneration();
+			cancellation();
+			holeDigging();
+			searchBudget();
+			restarts();
 		} catch (Exception x){
 			System.out.println();
 			x.printStackTrace(System.err);
@@ -94,4 +122,678 @@ public class QQWingTest {
 			}
 		}
 	}
+
+	private static final String EASY_PUZZLE = "9..6...7...1..428.7..2.............81.8....45.9..4.6....7.9.5.....4.5....1..6..29";
+
+	private static final String EASY_SOLUTION = "982651473351974286746238951274516398168329745593847612837192564629485137415763829";
+
+	private static int[] parsePuzzle(String s){
+		int[] puzzle = new int[QQWing.BOARD_SIZE];
+		for (int i=0; i<QQWing.BOARD_SIZE; i++){
+			char c = s.charAt(i);
+			puzzle[i] = (c == '.') ? 0 : c - '0';
+		}
+		return puzzle;
+	}
+
+	private static void solveEasyPuzzle(){
+		QQWing qqwing = new QQWing();
+		qqwing.setRecordHistory(true);
+		assertEqual(qqwing.setPuzzle(parsePuzzle(EASY_PUZZLE)) ? 1 : 0, 1);
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		int[] expected = parsePuzzle(EASY_SOLUTION);
+		int[] solution = qqwing.getSolution();
+		for (int i=0; i<QQWing.BOARD_SIZE; i++){
+			assertEqual(solution[i], expected[i]);
+		}
+		assertEqual(qqwing.getGivenCount(), 26);
+		assertEqual(qqwing.getSingleCount(), 36);
+		assertEqual(qqwing.getHiddenSingleCount(), 19);
+		assertEqual(qqwing.getGuessCount(), 0);
+		assertEqual(qqwing.getDifficulty().ordinal(), Difficulty.EASY.ordinal());
+		List<LogItem> instructions = qqwing.getSolveInstructions();
+		assertEqual(instructions.size(), QQWing.BOARD_SIZE);
+		LogItem first = instructions.get(0);
+		assertEqual(first.getType().ordinal(), LogType.GIVEN.ordinal());
+		assertEqual(first.getRound(), 1);
+		assertEqual(first.getPosition(), 0);
+		assertEqual(first.getValue(), 9);
+		assertEqual(qqwing.countSolutions(), 1);
+
+		// Statistics are kept without recording history
+		qqwing.setRecordHistory(false);
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertEqual(qqwing.getSingleCount(), 36);
+		assertEqual(qqwing.getHiddenSingleCount(), 19);
+		assertEqual(qqwing.getDifficulty().ordinal(), Difficulty.EASY.ordinal());
+		assertEqual(qqwing.getSolveInstructions().size(), 0);
+	}
+
+	private static final String HARD_PUZZLE = "1....7.9..3..2...8..96..5....53..9...1..8...26....4...3......1..4......7..7...3..";
+
+	private static int[] getCandidates(QQWing qqwing){
+		int[] candidates = new int[QQWing.BOARD_SIZE];
+		for (int cell=0; cell<QQWing.BOARD_SIZE; cell++){
+			candidates[cell] = qqwing.getCandidates(cell);
+		}
+		return candidates;
+	}
+
+	private static void assertSameBoard(QQWing qqwing, int[] candidates, int[] solution){
+		int[] actualCandidates = getCandidates(qqwing);
+		int[] actualSolution = qqwing.getSolution();
+		for (int cell=0; cell<QQWing.BOARD_SIZE; cell++){
+			assertEqual(actualCandidates[cell], candidates[cell]);
+			assertEqual(actualSolution[cell], solution[cell]);
+		}
+	}
+
+	private static void packedLogItems(){
+		int[] rounds = {1, 2, 10000};
+		for (int round : rounds){
+			for (LogType type : LogType.values()){
+				for (int value=0; value<=QQWing.ROW_COL_SEC_SIZE; value++){
+					for (int position=-1; position<QQWing.BOARD_SIZE; position++){
+						LogItem item = QQWing.unpackLogItem(QQWing.packLogItem(round, type, value, position));
+						assertEqual(item.getRound(), round);
+						assertEqual(item.getType().ordinal(), type.ordinal());
+						assertEqual(item.getValue(), (value == 0) ? -1 : value);
+						assertEqual(item.getPosition(), position);
+					}
+				}
+			}
+		}
+	}
+
+	private static void undoTrail(){
+		QQWing qqwing = new QQWing();
+		qqwing.setPuzzle(parsePuzzle(HARD_PUZZLE));
+		int[] givenCandidates = getCandidates(qqwing);
+		int[] givenSolution = qqwing.getSolution();
+		while (qqwing.single(2) || qqwing.hiddenSingle(2)){
+			// Fill in all the singles
+		}
+		int[] candidates = getCandidates(qqwing);
+		int[] solution = qqwing.getSolution();
+		assertEqual(qqwing.guess(3, 0) ? 1 : 0, 1);
+		while (qqwing.single(4) || qqwing.hiddenSingle(4)){
+			// Fill in all the singles
+		}
+
+		// Rolling back the guess leaves the singles found before it
+		qqwing.rollbackRound(4);
+		qqwing.rollbackRound(3);
+		assertSameBoard(qqwing, candidates, solution);
+		qqwing.rollbackRound(2);
+		assertSameBoard(qqwing, givenCandidates, givenSolution);
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+	}
+
+	private static void assertCounters(QQWing qqwing){
+		int[] solution = qqwing.getSolution();
+		int unsolved = 0;
+		boolean impossible = false;
+		for (int cell=0; cell<QQWing.BOARD_SIZE; cell++){
+			if (solution[cell] == 0){
+				unsolved++;
+				if (qqwing.getCandidates(cell) == 0) impossible = true;
+			}
+		}
+		assertEqual(qqwing.getUnsolvedCount(), unsolved);
+		assertEqual(qqwing.isImpossible() ? 1 : 0, impossible ? 1 : 0);
+		assertEqual(qqwing.isSolved() ? 1 : 0, unsolved == 0 ? 1 : 0);
+	}
+
+	/**
+	 * Solve by singles and guessing, checking the counters after every move.
+	 *
+	 * @param deadEnds Incremented for each guess that leads to a cell with
+	 *        no possibilities
+	 */
+	private static boolean solveCheckingCounters(QQWing qqwing, int round, int[] deadEnds){
+		while (!qqwing.isSolved() && !qqwing.isImpossible() && (qqwing.single(round) || qqwing.hiddenSingle(round))){
+			assertCounters(qqwing);
+		}
+		if (qqwing.isSolved()) return true;
+		if (qqwing.isImpossible()){
+			deadEnds[0]++;
+			return false;
+		}
+		for (int guess=0; qqwing.guess(round + 1, guess); guess++){
+			assertCounters(qqwing);
+			if (solveCheckingCounters(qqwing, round + 2, deadEnds)) return true;
+			qqwing.rollbackRound(round + 2);
+			qqwing.rollbackRound(round + 1);
+			assertCounters(qqwing);
+		}
+		return false;
+	}
+
+	private static void incrementalCounters(){
+		QQWing qqwing = new QQWing();
+		qqwing.setPuzzle(parsePuzzle(HARD_PUZZLE));
+		assertCounters(qqwing);
+		int[] deadEnds = new int[1];
+		assertEqual(solveCheckingCounters(qqwing, 2, deadEnds) ? 1 : 0, 1);
+		assertRange(deadEnds[0], 1, Integer.MAX_VALUE);
+		assertCounters(qqwing);
+	}
+
+	/**
+	 * The unsolved cell with the fewest possibilities, the first one when
+	 * there is a tie.
+	 */
+	private static int findFewestPossibilitiesByScan(QQWing qqwing){
+		int[] solution = qqwing.getSolution();
+		int best = -1;
+		int bestCount = QQWing.ROW_COL_SEC_SIZE + 1;
+		for (int cell=0; cell<QQWing.BOARD_SIZE; cell++){
+			int count = Integer.bitCount(qqwing.getCandidates(cell));
+			if (solution[cell] == 0 && count < bestCount){
+				best = cell;
+				bestCount = count;
+			}
+		}
+		return best;
+	}
+
+	private static void fewestPossibilities(){
+		// Cells are in their natural order until the first shuffle
+		QQWing qqwing = new QQWing();
+		qqwing.setPuzzle(parsePuzzle(HARD_PUZZLE));
+		int round = 2;
+		while (!qqwing.isSolved() && !qqwing.isImpossible()){
+			assertEqual(qqwing.findPositionWithFewestPossibilities(), findFewestPossibilitiesByScan(qqwing));
+			if (!qqwing.single(round) && !qqwing.hiddenSingle(round)) qqwing.guess(round, 0);
+			round++;
+		}
+		for (round--; round >= 2; round--){
+			qqwing.rollbackRound(round);
+			assertEqual(qqwing.findPositionWithFewestPossibilities(), findFewestPossibilitiesByScan(qqwing));
+		}
+	}
+
+	private static void assertValuePositions(QQWing qqwing){
+		for (int unit=0; unit<QQWing.UNIT_COUNT; unit++){
+			int hiddenSingles = 0;
+			for (int valIndex=0; valIndex<QQWing.ROW_COL_SEC_SIZE; valIndex++){
+				int positions = 0;
+				for (int i=0; i<QQWing.ROW_COL_SEC_SIZE; i++){
+					if ((qqwing.getCandidates(QQWing.UNIT_CELLS[unit][i]) & (1 << valIndex)) != 0) positions |= 1 << i;
+				}
+				assertEqual(qqwing.getValuePositions(unit, valIndex), positions);
+				if (Integer.bitCount(positions) == 1) hiddenSingles |= 1 << valIndex;
+			}
+			assertEqual(qqwing.getHiddenSingleValues(unit), hiddenSingles);
+		}
+	}
+
+	private static void valuePositionTables(){
+		QQWing qqwing = new QQWing();
+		qqwing.setPuzzle(parsePuzzle(HARD_PUZZLE));
+		assertValuePositions(qqwing);
+		int round = 2;
+		while (!qqwing.isSolved() && !qqwing.isImpossible()){
+			if (!qqwing.hiddenSingle(round) && !qqwing.pointingPairTriple(round) && !qqwing.nakedSubset(round, 2)) qqwing.guess(round, 0);
+			assertValuePositions(qqwing);
+			round++;
+		}
+		for (round--; round >= 2; round--){
+			qqwing.rollbackRound(round);
+			assertValuePositions(qqwing);
+		}
+	}
+
+	private static void exactCoverCounting(){
+		int[] puzzle = parsePuzzle(EASY_PUZZLE);
+		QQWing qqwing = new QQWing();
+		for (int removed=0; removed<QQWing.BOARD_SIZE; removed++){
+			if (removed < 12) puzzle[removed] = 0;
+		}
+		qqwing.setPuzzle(puzzle);
+		int exactCoverCount = qqwing.countSolutions();
+		assertRange(exactCoverCount, 2, Integer.MAX_VALUE);
+		assertEqual(qqwing.countSolutionsLimited(), 2);
+		qqwing.setExactCoverCounting(false);
+		assertEqual(qqwing.countSolutions(), exactCoverCount);
+
+		puzzle[19] = puzzle[18];
+		qqwing.setPuzzle(puzzle);
+		qqwing.setExactCoverCounting(true);
+		assertEqual(qqwing.countSolutions(), 0);
+	}
+
+	private static void propagateSingles(){
+		QQWing qqwing = new QQWing();
+		qqwing.setRecordHistory(true);
+		qqwing.setPropagateSingles(true);
+		qqwing.setPuzzle(parsePuzzle(EASY_PUZZLE));
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		int[] expected = parsePuzzle(EASY_SOLUTION);
+		int[] solution = qqwing.getSolution();
+		for (int i=0; i<QQWing.BOARD_SIZE; i++){
+			assertEqual(solution[i], expected[i]);
+		}
+		assertEqual(qqwing.getSingleCount() + qqwing.getHiddenSingleCount(), 55);
+		assertRange(qqwing.getHiddenSingleCount(), 1, 55);
+		assertEqual(qqwing.getGuessCount(), 0);
+		assertEqual(qqwing.getDifficulty().ordinal(), Difficulty.EASY.ordinal());
+		qqwing.setExactCoverCounting(false);
+		assertEqual(qqwing.countSolutions(), 1);
+	}
+
+	private static void solveStrategies(){
+		QQWing qqwing = new QQWing();
+		qqwing.setRecordHistory(true);
+		qqwing.setPuzzle(parsePuzzle(EASY_PUZZLE));
+		qqwing.setSolveStrategies(Arrays.asList(SolveTechnique.SINGLE));
+		assertEqual(qqwing.getSolveStrategies().size(), 1);
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertEqual(qqwing.getHiddenSingleCount(), 0);
+		assertRange(qqwing.getGuessCount(), 1, QQWing.BOARD_SIZE);
+		assertEqual(qqwing.getDifficulty().ordinal(), Difficulty.EXPERT.ordinal());
+
+		// Without singles the last cell is filled by a guess
+		qqwing.setExactCoverCounting(false);
+		qqwing.setSolveStrategies(Collections.<SolveTechnique>emptyList());
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertEqual(qqwing.countSolutions(), 1);
+		qqwing.setSolveStrategies(Arrays.asList(SolveTechnique.NAKED_PAIR));
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertEqual(qqwing.countSolutions(), 1);
+		qqwing.setExactCoverCounting(true);
+
+		qqwing.setSolveStrategies(Arrays.asList(SolveTechnique.values()));
+		qqwing.setAdaptiveStrategyOrder(true);
+		for (int i=0; i<3; i++){
+			assertEqual(qqwing.solve() ? 1 : 0, 1);
+			assertEqual(qqwing.getDifficulty().ordinal(), Difficulty.EASY.ordinal());
+		}
+		List<SolveTechnique> strategies = qqwing.getSolveStrategies();
+		assertEqual(strategies.get(0) == SolveTechnique.SINGLE ? 1 : 0, 1);
+		assertEqual(strategies.get(1) == SolveTechnique.HIDDEN_SINGLE ? 1 : 0, 1);
+	}
+
+	private static void nakedTriple(){
+		QQWing qqwing = new QQWing();
+		qqwing.setRecordHistory(true);
+		qqwing.setPuzzle(parsePuzzle("1..2..6..7..3.1....9...43.7.4.6..9..9......5...71...2..6....4.............3..5..."));
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertRange(qqwing.getNakedTripleCount(), 1, QQWing.BOARD_SIZE);
+		assertEqual(qqwing.getGuessCount(), 0);
+		assertEqual(qqwing.getDifficulty().ordinal(), Difficulty.INTERMEDIATE.ordinal());
+
+		// With only pairs, the puzzle can't be solved without guessing
+		List<SolveTechnique> strategies = new ArrayList<>(qqwing.getSolveStrategies());
+		strategies.removeAll(Arrays.asList(SolveTechnique.NAKED_TRIPLE, SolveTechnique.HIDDEN_TRIPLE, SolveTechnique.NAKED_QUAD, SolveTechnique.HIDDEN_QUAD));
+		qqwing.setSolveStrategies(strategies);
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertEqual(qqwing.getNakedTripleCount(), 0);
+		assertRange(qqwing.getGuessCount(), 1, QQWing.BOARD_SIZE);
+	}
+
+	private static void fishAndWings(){
+		QQWing qqwing = new QQWing();
+		qqwing.setRecordHistory(true);
+		qqwing.setPuzzle(parsePuzzle("1.....569492.561.8.561.924...964.8.1.64.1....218.356.4.4.5...169.5.614.2621.....5"));
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertEqual(qqwing.getXWingCount(), 1);
+		assertEqual(qqwing.getGuessCount(), 0);
+		assertEqual(qqwing.getDifficulty().ordinal(), Difficulty.HARD.ordinal());
+
+		qqwing.setPuzzle(parsePuzzle("6...257...4...7..2.1.........9....31....16.4.....9...5.65..2.............3.....24"));
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertRange(qqwing.getXYWingCount(), 1, QQWing.BOARD_SIZE);
+		assertEqual(qqwing.getGuessCount(), 0);
+		assertEqual(qqwing.getDifficulty().ordinal(), Difficulty.HARD.ordinal());
+		assertEqual(qqwing.countSolutions(), 1);
+	}
+
+	private static void generateDifficulty(){
+		QQWing qqwing = new QQWing();
+		boolean generated = false;
+		for (int i=0; !generated && i<100; i++){
+			generated = qqwing.generatePuzzle(Symmetry.NONE, Difficulty.EASY);
+		}
+		assertEqual(generated ? 1 : 0, 1);
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertEqual(qqwing.getDifficulty().ordinal(), Difficulty.EASY.ordinal());
+		assertEqual(qqwing.countSolutions(), 1);
+	}
+
+	private static void difficultyQuota(){
+		DifficultyQuota quota = new DifficultyQuota();
+		quota.setQuota(Difficulty.SIMPLE, 2);
+		quota.setQuota(Difficulty.EASY, 1);
+		assertEqual(quota.getTotal(), 3);
+		assertEqual(quota.getHardestOpen().ordinal(), Difficulty.EASY.ordinal());
+		assertEqual(quota.claim(Difficulty.EASY, 5), 1);
+		assertEqual(quota.claim(Difficulty.EASY, 1), 0);
+		assertEqual(quota.claim(Difficulty.UNKNOWN, 1), 0);
+		assertEqual(quota.getHardestOpen().ordinal(), Difficulty.SIMPLE.ordinal());
+		assertEqual(quota.claim(Difficulty.SIMPLE, 1), 1);
+		assertEqual(quota.isFull() ? 1 : 0, 0);
+		assertEqual(quota.claim(Difficulty.SIMPLE, 1), 1);
+		assertEqual(quota.isFull() ? 1 : 0, 1);
+		assertEqual(quota.getTotal(), 3);
+
+		// Ratings never come out harder than asked for, and match a full
+		// solve
+		QQWing qqwing = new QQWing(3);
+		for (int i=0; i<10; i++){
+			Difficulty rating = qqwing.generateRatedPuzzle(Symmetry.NONE, Difficulty.EASY);
+			assertRange(rating.ordinal(), Difficulty.UNKNOWN.ordinal(), Difficulty.EASY.ordinal());
+			if (rating != Difficulty.UNKNOWN){
+				assertEqual(qqwing.solve() ? 1 : 0, 1);
+				assertEqual(qqwing.getDifficulty().ordinal(), rating.ordinal());
+			}
+		}
+	}
+
+	private static void seededGeneration(){
+		QQWing first = new QQWing(42);
+		QQWing second = new QQWing(42);
+		for (int i=0; i<5; i++){
+			first.generatePuzzleSymmetry(Symmetry.RANDOM);
+			second.generatePuzzleSymmetry(Symmetry.RANDOM);
+			assertEqual(first.getPuzzleString().equals(second.getPuzzleString()) ? 1 : 0, 1);
+		}
+	}
+
+	private static void generateFromSolution(){
+		QQWing qqwing = new QQWing();
+		qqwing.generatePuzzle();
+		qqwing.solve();
+		int[] solution = qqwing.getSolution();
+		assertEqual(qqwing.generatePuzzleFromSolution(solution, Symmetry.ROTATE180) ? 1 : 0, 1);
+		int[] puzzle = qqwing.getPuzzle();
+		for (int cell=0; cell<QQWing.BOARD_SIZE; cell++){
+			if (puzzle[cell] != 0) assertEqual(puzzle[cell], solution[cell]);
+		}
+		assertEqual(qqwing.countSolutions(), 1);
+		solution[0] = solution[1];
+		assertEqual(qqwing.generatePuzzleFromSolution(solution, Symmetry.NONE) ? 1 : 0, 0);
+	}
+
+	/**
+	 * The number of different solution grids, up to rearrangement, among
+	 * the given number of generated puzzles.
+	 */
+	private static int countGeneratedGrids(QQWing qqwing, int puzzles){
+		HashSet<Long> grids = new HashSet<>();
+		QQWing grid = new QQWing();
+		for (int i=0; i<puzzles; i++){
+			qqwing.generatePuzzle();
+			qqwing.solve();
+			grid.setPuzzle(qqwing.getSolution());
+			grids.add(grid.getCanonicalHash());
+		}
+		return grids.size();
+	}
+
+	private static void solutionPool(){
+		// Without a pool every puzzle gets a new grid
+		assertEqual(countGeneratedGrids(new QQWing(11), 10), 10);
+
+		// Grids in the pool are replaced after a few puzzles
+		QQWing qqwing = new QQWing(11);
+		qqwing.setSolutionPoolSize(2);
+		assertRange(countGeneratedGrids(qqwing, 48), 4, 48);
+	}
+
+	private static void isomorphExpansion(){
+		QQWing qqwing = new QQWing();
+		qqwing.generatePuzzle();
+		qqwing.solve();
+		Difficulty difficulty = qqwing.getDifficulty();
+		int singleCount = qqwing.getSingleCount();
+		qqwing.transformToRandomIsomorph();
+		assertEqual(qqwing.getDifficulty().ordinal(), difficulty.ordinal());
+		assertEqual(qqwing.getSingleCount(), singleCount);
+		int[] puzzle = qqwing.getPuzzle();
+		int[] solution = qqwing.getSolution();
+		for (int cell=0; cell<QQWing.BOARD_SIZE; cell++){
+			if (puzzle[cell] != 0) assertEqual(puzzle[cell], solution[cell]);
+		}
+		QQWing check = new QQWing();
+		check.setPuzzle(puzzle);
+		assertEqual(check.solve() ? 1 : 0, 1);
+		assertEqual(check.getSolutionString().equals(qqwing.getSolutionString()) ? 1 : 0, 1);
+	}
+
+	private static void canonicalForm(){
+		QQWing qqwing = new QQWing();
+		qqwing.setPuzzle(parsePuzzle(EASY_PUZZLE));
+		int[] canonical = qqwing.getCanonicalPuzzle();
+		int[] expected = parsePuzzle("........1....12.34..35..6....5.7.4....62...8534........3..2.81.6....5.7.8....7...");
+		for (int i=0; i<QQWing.BOARD_SIZE; i++){
+			assertEqual(canonical[i], expected[i]);
+		}
+		long hash = qqwing.getCanonicalHash();
+		assertEqual(hash == 0xd7b5e4f9760486b4L ? 1 : 0, 1);
+		for (int i=0; i<10; i++){
+			qqwing.transformToRandomIsomorph();
+			assertEqual(qqwing.getCanonicalHash() == hash ? 1 : 0, 1);
+		}
+	}
+
+	private static void dedupFilters(){
+		HashFilter[] filters = {new StripedLongSet(), new BloomFilter(1 << 20)};
+		for (HashFilter filter : filters){
+			for (long hash=0; hash<1000; hash++){
+				assertEqual(filter.add(hash * 0x9e3779b97f4a7c15L) ? 1 : 0, 1);
+			}
+			for (long hash=0; hash<1000; hash++){
+				assertEqual(filter.add(hash * 0x9e3779b97f4a7c15L) ? 1 : 0, 0);
+			}
+		}
+
+		// Threads adding the same hashes at once see each one as new once
+		final HashFilter[] sharedFilters = {new StripedLongSet(), new BloomFilter(1 << 24)};
+		for (final HashFilter filter : sharedFilters){
+			final AtomicInteger added = new AtomicInteger(0);
+			Thread[] threads = new Thread[4];
+			for (int i=0; i<threads.length; i++){
+				threads[i] = new Thread(){
+					@Override public void run(){
+						for (long hash=0; hash<10000; hash++){
+							if (filter.add(hash * 0x9e3779b97f4a7c15L)) added.incrementAndGet();
+						}
+					}
+				};
+				threads[i].start();
+			}
+			for (Thread thread : threads){
+				try {
+					thread.join();
+				} catch (InterruptedException ix){
+					throw new RuntimeException(ix);
+				}
+			}
+			assertEqual(added.get(), 10000);
+		}
+	}
+
+	private static void parallelCounting(){
+		QQWing qqwing = new QQWing();
+		int[] puzzle = parsePuzzle(EASY_PUZZLE);
+		int removed = 0;
+		for (int i=0; removed<4; i++){
+			if (puzzle[i] != 0){
+				puzzle[i] = 0;
+				removed++;
+			}
+		}
+		qqwing.setPuzzle(puzzle);
+		int solutions = qqwing.countSolutions();
+		assertRange(solutions, 3, Integer.MAX_VALUE);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		assertEqual(qqwing.countSolutionsInParallel(pool), solutions);
+		assertEqual(qqwing.countSolutionsLimitedInParallel(pool), 2);
+		pool.shutdown();
+		assertEqual(qqwing.countSolutionsInParallel(2), solutions);
+
+		// A count that is part of a parallel count stops as soon as the
+		// solutions found by all of them reach the limit
+		DancingLinks links = new DancingLinks();
+		AtomicInteger found = new AtomicInteger(2);
+		links.setSharedFound(found, 2);
+		assertEqual(links.countSolutions(new int[QQWing.BOARD_SIZE], 2), 0);
+		found.set(1);
+		assertEqual(links.countSolutions(new int[QQWing.BOARD_SIZE], 2), 1);
+		assertEqual(found.get(), 2);
+	}
+
+	private static void parallelGeneration(){
+		QQWing serial = new QQWing(42);
+		QQWing parallel = new QQWing(42);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		parallel.setGeneratorPool(pool);
+		for (int i=0; i<5; i++){
+			serial.generatePuzzleSymmetry(Symmetry.RANDOM);
+			parallel.generatePuzzleSymmetry(Symmetry.RANDOM);
+			assertEqual(serial.getPuzzleString().equals(parallel.getPuzzleString()) ? 1 : 0, 1);
+			assertEqual(parallel.countSolutions(), 1);
+		}
+		pool.shutdown();
+	}
+
+	private static void cancellation(){
+		QQWing qqwing = new QQWing();
+		final AtomicBoolean cancel = new AtomicBoolean(false);
+		qqwing.setCancelFlag(cancel);
+		assertEqual(qqwing.generatePuzzle() ? 1 : 0, 1);
+		int[] puzzle = qqwing.getPuzzle();
+		cancel.set(true);
+		assertEqual(qqwing.generatePuzzle() ? 1 : 0, 0);
+		qqwing.setPuzzle(puzzle);
+		assertEqual(qqwing.solve() ? 1 : 0, 0);
+		assertEqual(qqwing.countSolutions(), 0);
+		cancel.set(false);
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertEqual(qqwing.countSolutions(), 1);
+
+		// An empty grid has far too many solutions to count in parallel
+		// without being cancelled
+		ForkJoinPool pool = new ForkJoinPool(2);
+		qqwing.setPuzzle(new int[QQWing.BOARD_SIZE]);
+		cancel.set(true);
+		assertEqual(qqwing.countSolutionsInParallel(pool), 0);
+		cancel.set(false);
+		new Thread(){
+			@Override public void run(){
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException ix){
+					// Cancel now
+				}
+				cancel.set(true);
+			}
+		}.start();
+		assertRange(qqwing.countSolutionsInParallel(pool), 0, Integer.MAX_VALUE);
+		pool.shutdown();
+	}
+
+	private static void holeDigging(){
+		QQWing qqwing = new QQWing(7);
+		HoleDigger digger = new HoleDigger();
+		for (int i=0; i<3; i++){
+			qqwing.generatePuzzle();
+			qqwing.solve();
+			int[] solution = qqwing.getSolution();
+			int[] puzzle = solution.clone();
+			digger.start(puzzle, solution);
+			QQWing check = new QQWing();
+			for (int cell=0; cell<QQWing.BOARD_SIZE; cell++){
+				puzzle[cell] = 0;
+				check.setPuzzle(puzzle);
+				boolean unique = check.countSolutions() == 1;
+				assertEqual(digger.tryRemove(new int[]{cell}, 1) ? 1 : 0, unique ? 1 : 0);
+				if (!unique) puzzle[cell] = solution[cell];
+			}
+		}
+
+		// Removing every clue at once needs more than one value tried, so
+		// the clues stay when the budget runs out or the check is cancelled
+		int[] solution = qqwing.getSolution();
+		int[] cells = new int[QQWing.BOARD_SIZE];
+		for (int cell=0; cell<QQWing.BOARD_SIZE; cell++){
+			cells[cell] = cell;
+		}
+		digger.start(solution, solution);
+		digger.setBudget(1, 0);
+		assertEqual(digger.tryRemove(cells, cells.length) ? 1 : 0, 0);
+		assertEqual(digger.isBudgetExhausted() ? 1 : 0, 1);
+		digger.setBudget(0, 0);
+		AtomicBoolean cancel = new AtomicBoolean(true);
+		digger.setCancelFlag(cancel);
+		assertEqual(digger.tryRemove(cells, cells.length) ? 1 : 0, 0);
+		assertEqual(digger.isBudgetExhausted() ? 1 : 0, 0);
+		cancel.set(false);
+		assertEqual(digger.tryRemove(cells, 1) ? 1 : 0, 1);
+	}
+
+	private static void searchBudget(){
+		QQWing qqwing = new QQWing();
+		qqwing.setPuzzle(new int[QQWing.BOARD_SIZE]);
+		qqwing.setSearchBudget(1, 0);
+		assertEqual(qqwing.solve() ? 1 : 0, 0);
+		assertEqual(qqwing.isBudgetExhausted() ? 1 : 0, 1);
+		assertEqual((int)qqwing.getSearchNodeCount(), 1);
+		qqwing.setSearchBudget(10, 0);
+		qqwing.countSolutions();
+		assertEqual(qqwing.isBudgetExhausted() ? 1 : 0, 1);
+		assertEqual((int)qqwing.getSearchNodeCount(), 10);
+		qqwing.setSearchBudget(0, 1);
+		qqwing.countSolutions();
+		assertEqual(qqwing.isBudgetExhausted() ? 1 : 0, 1);
+		qqwing.setSearchBudget(10, 0);
+		qqwing.countSolutionsInParallel(2);
+		assertEqual(qqwing.isBudgetExhausted() ? 1 : 0, 1);
+		assertRange((int)qqwing.getSearchNodeCount(), 1, 10);
+		qqwing.setSearchBudget(0, 1);
+		qqwing.countSolutionsInParallel(2);
+		assertEqual(qqwing.isBudgetExhausted() ? 1 : 0, 1);
+		qqwing.setSearchBudget(0, 0);
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertEqual(qqwing.isBudgetExhausted() ? 1 : 0, 0);
+		assertRange(qqwing.getSearchDepth(), 1, QQWing.BOARD_SIZE);
+
+		// Digging keeps the clues it couldn't check in time, and reports it
+		// even when the last check finished
+		int[] solution = qqwing.getSolution();
+		ForkJoinPool pool = new ForkJoinPool(2);
+		for (int i=0; i<3; i++){
+			QQWing digger = new QQWing(i);
+			digger.setExactCoverCounting(i != 1);
+			if (i == 2) digger.setGeneratorPool(pool);
+			digger.setSearchBudget(2, 0);
+			assertEqual(digger.generatePuzzleFromSolution(solution, Symmetry.NONE) ? 1 : 0, 1);
+			assertEqual(digger.isBudgetExhausted() ? 1 : 0, 1);
+			digger.setSearchBudget(0, 0);
+			assertEqual(digger.countSolutions(), 1);
+		}
+		pool.shutdown();
+	}
+
+	private static void restarts(){
+		int[] luby = {1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, 1};
+		for (int i=0; i<luby.length; i++){
+			assertEqual(QQWing.luby(i + 1), luby[i]);
+		}
+		String puzzle = "1....7.9..3..2...8..96..5....53..9...1..8...26....4...3......1..4......7..7...3..";
+		QQWing qqwing = new QQWing(42);
+		qqwing.setPuzzle(parsePuzzle(puzzle));
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertEqual(qqwing.getRestartCount(), 0);
+		String solution = qqwing.getSolutionString();
+		qqwing.setRestartStrategy(RestartStrategy.LUBY, 1);
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertRange(qqwing.getRestartCount(), 1, Integer.MAX_VALUE);
+		assertEqual(qqwing.getSolutionString().equals(solution) ? 1 : 0, 1);
+		qqwing.setRestartStrategy(RestartStrategy.GEOMETRIC, 1);
+		assertEqual(qqwing.solve() ? 1 : 0, 1);
+		assertRange(qqwing.getRestartCount(), 1, Integer.MAX_VALUE);
+		assertEqual(qqwing.getSolutionString().equals(solution) ? 1 : 0, 1);
+	}
 }